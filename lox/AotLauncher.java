@@ -0,0 +1,28 @@
+package lox;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+//Main-Class of the jars jloxc builds : loads the precompiled program from the jar and runs it on the VM.
+public class AotLauncher {
+    static final String IMAGE = "lox/program.loxb"; //where jloxc puts the program inside the jar
+
+    public static void main(String[] args) throws IOException {
+        InputStream resource = AotLauncher.class.getClassLoader().getResourceAsStream(IMAGE);
+        if (resource == null) {
+          System.err.println("No compiled Lox program in this jar.");
+          System.exit(66);
+        }
+
+        VM vm = new VM();
+        VmFunction script;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(resource))) {
+          script = BytecodeImage.read(in, vm);
+        }
+
+        vm.interpret(script);
+        if (Lox.hadRuntimeError) System.exit(70);
+    }
+}
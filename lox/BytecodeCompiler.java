@@ -0,0 +1,856 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//compiles a resolved program into bytecode for the VM.
+//Locals live in stack slots of their function's frame and variables captured by closures are reached through upvalues,
+//so the compiler keeps its own scope bookkeeping (just like the Resolver does) instead of using the Environment slots.
+
+class BytecodeCompiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+    private static class Local
+    {
+        final String name;
+        final int depth;
+        boolean captured = false; //captured locals have to be moved into their upvalue when they go out of scope
+
+        Local(String name, int depth)
+        {
+            this.name = name;
+            this.depth = depth;
+        }
+    }
+
+    private static class Upvalue
+    {
+        final int index;
+        final boolean isLocal; //true if it captures a local of the enclosing function, false if it reuses one of the enclosing function's upvalues
+
+        Upvalue(int index, boolean isLocal)
+        {
+            this.index = index;
+            this.isLocal = isLocal;
+        }
+    }
+
+    private static class Loop
+    {
+        final int scopeDepth;
+        final List<Integer> breaks = new ArrayList<>(); //jumps to patch once the end of the loop is known
+
+        Loop(int scopeDepth)
+        {
+            this.scopeDepth = scopeDepth;
+        }
+    }
+
+    private static class FunctionState
+    {
+        final FunctionState enclosing;
+        final VmFunction function;
+        final List<Local> locals = new ArrayList<>();
+        final List<Upvalue> upvalues = new ArrayList<>();
+        final List<Loop> loops = new ArrayList<>();
+        int scopeDepth = 0;
+        int stackDepth = 0; //values on the stack at the current point of the code, used to work out maxStack
+        final List<Integer> pendingJumps = new ArrayList<>(); //u16 operands of forward jumps not patched yet, in code order
+        final Map<Integer, Integer> trampolines = new HashMap<>(); //such an operand -> u32 operand of the JUMP_WIDE it was sent through
+
+        FunctionState(FunctionState enclosing, VmFunction function, String slotZero)
+        {
+            this.enclosing = enclosing;
+            this.function = function;
+            locals.add(new Local(slotZero, 0)); //slot 0 holds the callee, or 'this' inside methods
+            stackDepth = 1;
+            function.maxStack = 1;
+        }
+    }
+
+    //a forward jump this far behind the code being emitted is sent through a trampoline at the next statement,
+    //which leaves a single statement 32K of code before its u16 offset could overflow.
+    private static final int TRAMPOLINE_DISTANCE = 0x8000;
+
+    private final VM vm;
+    private FunctionState current;
+    private int line = 0; //line of the token the code being emitted belongs to
+    private boolean echo = false; //REPL mode : print the value of top level expression statements
+
+    BytecodeCompiler(VM vm)
+    {
+        this.vm = vm;
+    }
+
+    VmFunction compile(List<Stmt> statements, boolean repl_mode)
+    {
+        current = new FunctionState(null, new VmFunction(null), "");
+        echo = repl_mode;
+        for(Stmt statement : statements)
+        {
+            compile(statement);
+        }
+        emitOp(OpCode.NIL);
+        emitOp(OpCode.RETURN);
+        return current.function;
+    }
+
+    private void compile(Stmt stmt)
+    {
+        trampolines();
+        stmt.accept(this);
+    }
+
+    private void compile(Expr expr)
+    {
+        expr.accept(this);
+    }
+
+    private void compile(List<Stmt> statements)
+    {
+        for(Stmt statement : statements)
+        {
+            compile(statement);
+        }
+    }
+
+    //---------------------------------------------------------------- emitting code
+
+    private Chunk chunk()
+    {
+        return current.function.chunk;
+    }
+
+    private void emitByte(int b)
+    {
+        chunk().write(b, line);
+    }
+
+    private void emitShort(int value)
+    {
+        emitByte((value >> 8) & 0xff);
+        emitByte(value & 0xff);
+    }
+
+    private void emitInt(int value)
+    {
+        emitShort((value >> 16) & 0xffff);
+        emitShort(value & 0xffff);
+    }
+
+    private void emitOp(byte op)
+    {
+        emitByte(op);
+        adjustStack(stackEffect(op));
+    }
+
+    private void emitOp(byte op, int operand)
+    {
+        emitOp(op);
+        emitShort(operand);
+    }
+
+    private void emitByteOp(byte op, int operand)
+    {
+        emitOp(op);
+        emitByte(operand);
+    }
+
+    private void emitSlotOp(byte op, byte wideOp, int slot) //locals and upvalues past the first 256 take the u16 form
+    {
+        if(slot <= 0xff) emitByteOp(op, slot);
+        else emitOp(wideOp, slot);
+    }
+
+    private void adjustStack(int delta)
+    {
+        current.stackDepth += delta;
+        if(current.stackDepth > current.function.maxStack) current.function.maxStack = current.stackDepth;
+    }
+
+    private static int stackEffect(byte op) //ops whose effect depends on an operand are adjusted at the place they are emitted
+    {
+        switch(op)
+        {
+            case OpCode.CONSTANT: case OpCode.NIL: case OpCode.TRUE: case OpCode.FALSE:
+            case OpCode.GET_LOCAL: case OpCode.GET_GLOBAL: case OpCode.GET_UPVALUE:
+            case OpCode.GET_LOCAL_WIDE: case OpCode.GET_UPVALUE_WIDE:
+            case OpCode.CLOSURE: case OpCode.CLASS:
+                return 1;
+            case OpCode.POP: case OpCode.DEFINE_GLOBAL: case OpCode.SET_PROPERTY: case OpCode.GET_SUPER:
+            case OpCode.EQUAL: case OpCode.NOT_EQUAL: case OpCode.GREATER: case OpCode.GREATER_EQUAL:
+            case OpCode.LESS: case OpCode.LESS_EQUAL: case OpCode.ADD: case OpCode.SUBTRACT:
+            case OpCode.MULTIPLY: case OpCode.DIVIDE: case OpCode.PRINT: case OpCode.CLOSE_UPVALUE:
+            case OpCode.RETURN: case OpCode.METHOD: case OpCode.STATIC_METHOD:
+                return -1;
+            default:
+                return 0;
+        }
+    }
+
+    private void error(String message) //limits of the bytecode format, reported like any other compile error
+    {
+        Lox.error(line, message);
+    }
+
+    private int makeConstant(Object value)
+    {
+        int index = chunk().addConstant(value);
+        if(index > 0xffff)
+        {
+            error("Too many constants in one chunk.");
+            return 0;
+        }
+        return index;
+    }
+
+    private int emitJump(byte op)
+    {
+        emitOp(op);
+        emitShort(0xffff);
+        int offset = chunk().count - 2;
+        current.pendingJumps.add(offset);
+        return offset;
+    }
+
+    private void patchJump(int offset)
+    {
+        Integer wide = current.trampolines.remove(offset);
+        if(wide != null)
+        {
+            writeInt(wide, chunk().count - wide - 4);
+            return;
+        }
+        current.pendingJumps.remove((Integer)offset);
+        int jump = chunk().count - offset - 2;
+        if(jump > 0xffff) error("Too much code to jump over."); //only a single statement of more than 32K of code gets here
+        chunk().code[offset] = (byte)((jump >> 8) & 0xff);
+        chunk().code[offset + 1] = (byte)(jump & 0xff);
+    }
+
+    private void writeInt(int offset, int value)
+    {
+        for(int i = 0; i < 4; i++)
+        {
+            chunk().code[offset + i] = (byte)((value >> (24 - 8 * i)) & 0xff);
+        }
+    }
+
+    //called between statements. Once the oldest pending jump falls TRAMPOLINE_DISTANCE behind, every pending jump is pointed at
+    //a JUMP_WIDE of its own, which patchJump() later aims at the real target. The code falling through skips over them.
+    private void trampolines()
+    {
+        List<Integer> pending = current.pendingJumps;
+        if(pending.isEmpty() || chunk().count - pending.get(0) < TRAMPOLINE_DISTANCE) return;
+
+        emitOp(OpCode.JUMP, pending.size() * 5);
+        for(int offset : pending)
+        {
+            int jump = chunk().count - offset - 2;
+            chunk().code[offset] = (byte)((jump >> 8) & 0xff);
+            chunk().code[offset + 1] = (byte)(jump & 0xff);
+            emitOp(OpCode.JUMP_WIDE);
+            emitInt(-1);
+            current.trampolines.put(offset, chunk().count - 4);
+        }
+        pending.clear();
+    }
+
+    private void emitLoop(int loopStart)
+    {
+        if(chunk().count + 3 - loopStart <= 0xffff)
+        {
+            emitOp(OpCode.LOOP);
+            emitShort(chunk().count - loopStart + 2);
+        }
+        else
+        {
+            emitOp(OpCode.LOOP_WIDE);
+            emitInt(chunk().count - loopStart + 4);
+        }
+    }
+
+    //---------------------------------------------------------------- scopes and variables
+
+    private void beginScope()
+    {
+        current.scopeDepth++;
+    }
+
+    private void endScope()
+    {
+        current.scopeDepth--;
+        List<Local> locals = current.locals;
+        while(!locals.isEmpty() && locals.get(locals.size() - 1).depth > current.scopeDepth)
+        {
+            emitOp(locals.get(locals.size() - 1).captured ? OpCode.CLOSE_UPVALUE : OpCode.POP);
+            locals.remove(locals.size() - 1);
+        }
+    }
+
+    private boolean isGlobalScope()
+    {
+        return current.enclosing == null && current.scopeDepth == 0;
+    }
+
+    private void addLocal(String name) //the value of the local must already be on top of the stack
+    {
+        if(current.locals.size() == 0x10000)
+        {
+            error("Too many local variables in function.");
+            return;
+        }
+        current.locals.add(new Local(name, current.scopeDepth));
+    }
+
+    private int globalSlot(Token name)
+    {
+        int slot = vm.globalSlot(name.lexeme);
+        if(slot > 0xffff) error("Too many global variables.");
+        return slot;
+    }
+
+    private void defineVariable(Token name) //binds the value on top of the stack to 'name' in the current scope
+    {
+        line = name.line;
+        if(isGlobalScope())
+        {
+            emitOp(OpCode.DEFINE_GLOBAL, globalSlot(name));
+        }
+        else addLocal(name.lexeme);
+    }
+
+    private static int resolveLocal(FunctionState state, String name)
+    {
+        for(int i = state.locals.size() - 1; i >= 0; i--)
+        {
+            if(state.locals.get(i).name.equals(name)) return i;
+        }
+        return -1;
+    }
+
+    private int resolveUpvalue(FunctionState state, String name)
+    {
+        if(state.enclosing == null) return -1;
+
+        int local = resolveLocal(state.enclosing, name);
+        if(local != -1)
+        {
+            state.enclosing.locals.get(local).captured = true;
+            return addUpvalue(state, local, true);
+        }
+
+        int upvalue = resolveUpvalue(state.enclosing, name);
+        if(upvalue != -1) return addUpvalue(state, upvalue, false);
+
+        return -1;
+    }
+
+    private int addUpvalue(FunctionState state, int index, boolean isLocal)
+    {
+        for(int i = 0; i < state.upvalues.size(); i++)
+        {
+            Upvalue upvalue = state.upvalues.get(i);
+            if(upvalue.index == index && upvalue.isLocal == isLocal) return i;
+        }
+        if(state.upvalues.size() == 0x10000)
+        {
+            error("Too many closure variables in function.");
+            return 0;
+        }
+        state.upvalues.add(new Upvalue(index, isLocal));
+        state.function.upvalueCount = state.upvalues.size();
+        return state.upvalues.size() - 1;
+    }
+
+    private void loadVariable(Token name, String lexeme)
+    {
+        line = name.line;
+        int slot = resolveLocal(current, lexeme);
+        if(slot != -1)
+        {
+            emitSlotOp(OpCode.GET_LOCAL, OpCode.GET_LOCAL_WIDE, slot);
+            return;
+        }
+        slot = resolveUpvalue(current, lexeme);
+        if(slot != -1)
+        {
+            emitSlotOp(OpCode.GET_UPVALUE, OpCode.GET_UPVALUE_WIDE, slot);
+            return;
+        }
+        emitOp(OpCode.GET_GLOBAL, globalSlot(name));
+    }
+
+    //---------------------------------------------------------------- functions and classes
+
+    private void function(String name, int declLine, List<Token> parameters, List<Stmt> body, boolean method)
+    {
+        FunctionState state = new FunctionState(current, new VmFunction(name), method ? "this" : "");
+        boolean prevEcho = echo;
+        current = state;
+        echo = false;
+
+        beginScope();
+        for(Token param : parameters)
+        {
+            adjustStack(1); //arguments are already on the stack when the function starts running
+            line = param.line;
+            addLocal(param.lexeme);
+        }
+        state.function.arity = parameters.size();
+        compile(body);
+        emitOp(OpCode.NIL);
+        emitOp(OpCode.RETURN);
+
+        current = state.enclosing;
+        echo = prevEcho;
+
+        line = declLine;
+        emitOp(OpCode.CLOSURE, makeConstant(state.function));
+        for(Upvalue upvalue : state.upvalues)
+        {
+            emitByte(upvalue.isLocal ? 1 : 0);
+            emitShort(upvalue.index);
+        }
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt)
+    {
+        if(!isGlobalScope())
+        {
+            //declare the local before compiling the body so the function can refer to itself, the closure lands in this slot.
+            line = stmt.name.line;
+            addLocal(stmt.name.lexeme);
+            function(stmt.name.lexeme, stmt.name.line, stmt.parameters, stmt.body, false);
+            return null;
+        }
+        function(stmt.name.lexeme, stmt.name.line, stmt.parameters, stmt.body, false);
+        defineVariable(stmt.name);
+        return null;
+    }
+
+    @Override
+    public Void visitAnonymousFunctionExpr(Expr.AnonymousFunction expr)
+    {
+        function(null, line, expr.parameters, expr.body, false);
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt)
+    {
+        line = stmt.name.line;
+        int nameConstant = makeConstant(stmt.name.lexeme);
+        boolean global = isGlobalScope();
+        int classSlot = -1;
+        if(!global)
+        {
+            //reserve the slot first, methods may capture the class variable before it is assigned.
+            emitOp(OpCode.NIL);
+            addLocal(stmt.name.lexeme);
+            classSlot = current.locals.size() - 1;
+        }
+
+        if(stmt.superclass != null)
+        {
+            loadVariable(stmt.superclass.name, stmt.superclass.name.lexeme);
+            beginScope();
+            addLocal("super"); //methods capture the superclass through this local
+        }
+
+        line = stmt.name.line;
+        emitOp(OpCode.CLASS, nameConstant);
+        if(stmt.superclass != null)
+        {
+            line = stmt.superclass.name.line;
+            emitOp(OpCode.INHERIT);
+        }
+
+        for(Stmt.Function method : stmt.methods)
+        {
+            function(method.name.lexeme, method.name.line, method.parameters, method.body, true);
+            emitOp(OpCode.METHOD, makeConstant(method.name.lexeme));
+        }
+        for(Stmt.Function staticmethod : stmt.staticmethods)
+        {
+            function(staticmethod.name.lexeme, staticmethod.name.line, staticmethod.parameters, staticmethod.body, false);
+            emitOp(OpCode.STATIC_METHOD, makeConstant(staticmethod.name.lexeme));
+        }
+
+        line = stmt.name.line;
+        if(global)
+        {
+            emitOp(OpCode.DEFINE_GLOBAL, globalSlot(stmt.name));
+        }
+        else
+        {
+            emitSlotOp(OpCode.SET_LOCAL, OpCode.SET_LOCAL_WIDE, classSlot);
+            emitOp(OpCode.POP);
+        }
+
+        if(stmt.superclass != null) endScope();
+        return null;
+    }
+
+    //---------------------------------------------------------------- statements
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt)
+    {
+        boolean prevEcho = echo;
+        echo = false;
+        beginScope();
+        compile(stmt.Statements);
+        endScope();
+        echo = prevEcho;
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt)
+    {
+        compile(stmt.expression);
+        emitOp(echo ? OpCode.PRINT : OpCode.POP);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt)
+    {
+        compile(stmt.expression);
+        emitOp(OpCode.PRINT);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt)
+    {
+        if(stmt.intializer != null) compile(stmt.intializer);
+        else emitOp(OpCode.NIL);
+        defineVariable(stmt.name);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt)
+    {
+        compile(stmt.condition);
+        int elseJump = emitJump(OpCode.JUMP_IF_FALSE);
+        emitOp(OpCode.POP);
+        compile(stmt.trueBranch);
+        int endJump = emitJump(OpCode.JUMP);
+        patchJump(elseJump);
+        adjustStack(1); //the condition is still on the stack when we land on the else branch
+        emitOp(OpCode.POP);
+        if(stmt.falseBranch != null) compile(stmt.falseBranch);
+        patchJump(endJump);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt)
+    {
+        boolean prevEcho = echo;
+        echo = false;
+        int loopStart = chunk().count;
+        compile(stmt.condition);
+        int exitJump = emitJump(OpCode.JUMP_IF_FALSE);
+        emitOp(OpCode.POP);
+
+        Loop loop = new Loop(current.scopeDepth);
+        current.loops.add(loop);
+        compile(stmt.body);
+        current.loops.remove(current.loops.size() - 1);
+
+        emitLoop(loopStart);
+        patchJump(exitJump);
+        adjustStack(1);
+        emitOp(OpCode.POP);
+        for(int jump : loop.breaks) patchJump(jump); //a break has already popped the condition, so it lands after the POP
+        echo = prevEcho;
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(Stmt.For stmt)
+    {
+        boolean prevEcho = echo;
+        echo = false;
+        beginScope(); //for the loop variable, which every iteration shares
+        if(stmt.initializer != null) compile(stmt.initializer);
+
+        int loopStart = chunk().count;
+        compile(stmt.condition);
+        int exitJump = emitJump(OpCode.JUMP_IF_FALSE);
+        emitOp(OpCode.POP);
+
+        Loop loop = new Loop(current.scopeDepth);
+        current.loops.add(loop);
+        compile(stmt.body);
+        current.loops.remove(current.loops.size() - 1);
+        if(stmt.increment != null)
+        {
+            compile(stmt.increment);
+            emitOp(OpCode.POP);
+        }
+
+        emitLoop(loopStart);
+        patchJump(exitJump);
+        adjustStack(1);
+        emitOp(OpCode.POP);
+        for(int jump : loop.breaks) patchJump(jump);
+        endScope();
+        echo = prevEcho;
+        return null;
+    }
+
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt)
+    {
+        Loop loop = current.loops.get(current.loops.size() - 1);
+        //discard the locals declared inside the loop body without forgetting them, the code after the break still sees them.
+        int popped = 0;
+        for(int i = current.locals.size() - 1; i >= 0 && current.locals.get(i).depth > loop.scopeDepth; i--)
+        {
+            emitOp(current.locals.get(i).captured ? OpCode.CLOSE_UPVALUE : OpCode.POP);
+            popped++;
+        }
+        line = stmt.breakToken.line;
+        loop.breaks.add(emitJump(OpCode.JUMP));
+        adjustStack(popped);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt)
+    {
+        line = stmt.keyword.line;
+        if(stmt.value != null) compile(stmt.value);
+        else emitOp(OpCode.NIL);
+        emitOp(OpCode.RETURN);
+        return null;
+    }
+
+    //---------------------------------------------------------------- expressions
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr)
+    {
+        if(expr.value == null) emitOp(OpCode.NIL);
+        else if(expr.value.equals(Boolean.TRUE)) emitOp(OpCode.TRUE);
+        else if(expr.value.equals(Boolean.FALSE)) emitOp(OpCode.FALSE);
+        else emitOp(OpCode.CONSTANT, makeConstant(expr.value));
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr)
+    {
+        compile(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr)
+    {
+        compile(expr.right);
+        line = expr.operator.line;
+        emitOp(expr.operator.type == TokenType.MINUS ? OpCode.NEGATE : OpCode.NOT);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr)
+    {
+        compile(expr.left);
+        compile(expr.right);
+        line = expr.operator.line;
+        switch(expr.operator.type)
+        {
+            case PLUS: emitOp(OpCode.ADD); break;
+            case MINUS: emitOp(OpCode.SUBTRACT); break;
+            case STAR: emitOp(OpCode.MULTIPLY); break;
+            case SLASH: emitOp(OpCode.DIVIDE); break;
+            case GREATER: emitOp(OpCode.GREATER); break;
+            case GREATER_EQUAL: emitOp(OpCode.GREATER_EQUAL); break;
+            case LESS: emitOp(OpCode.LESS); break;
+            case LESS_EQUAL: emitOp(OpCode.LESS_EQUAL); break;
+            case EQUAL_EQUAL: emitOp(OpCode.EQUAL); break;
+            case BANG_EQUAL: emitOp(OpCode.NOT_EQUAL); break;
+            default:
+                break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr)
+    {
+        compile(expr.left);
+        if(expr.operator.type == TokenType.OR)
+        {
+            int elseJump = emitJump(OpCode.JUMP_IF_FALSE);
+            int endJump = emitJump(OpCode.JUMP);
+            patchJump(elseJump);
+            emitOp(OpCode.POP);
+            compile(expr.right);
+            patchJump(endJump);
+        }
+        else
+        {
+            int endJump = emitJump(OpCode.JUMP_IF_FALSE);
+            emitOp(OpCode.POP);
+            compile(expr.right);
+            patchJump(endJump);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitTernaryExpr(Expr.Ternary expr)
+    {
+        compile(expr.Condition);
+        int elseJump = emitJump(OpCode.JUMP_IF_FALSE);
+        emitOp(OpCode.POP);
+        compile(expr.TrueBranch);
+        int endJump = emitJump(OpCode.JUMP);
+        patchJump(elseJump);
+        emitOp(OpCode.POP);
+        compile(expr.FalseBranch);
+        patchJump(endJump);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr)
+    {
+        loadVariable(expr.name, expr.name.lexeme);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr)
+    {
+        compile(expr.value);
+        line = expr.name.line;
+        int slot = resolveLocal(current, expr.name.lexeme);
+        if(slot != -1)
+        {
+            emitSlotOp(OpCode.SET_LOCAL, OpCode.SET_LOCAL_WIDE, slot);
+            return null;
+        }
+        slot = resolveUpvalue(current, expr.name.lexeme);
+        if(slot != -1)
+        {
+            emitSlotOp(OpCode.SET_UPVALUE, OpCode.SET_UPVALUE_WIDE, slot);
+            return null;
+        }
+        emitOp(OpCode.SET_GLOBAL, globalSlot(expr.name));
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr)
+    {
+        loadVariable(expr.keyword, "this");
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Expr.Super expr)
+    {
+        loadVariable(expr.keyword, "this");
+        loadVariable(expr.keyword, "super");
+        line = expr.method.line;
+        emitOp(OpCode.GET_SUPER, makeConstant(expr.method.lexeme));
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr)
+    {
+        int argCount = expr.arguments.size();
+        if(expr.calee instanceof Expr.Get) //invoke the method directly instead of creating a bound method first
+        {
+            Expr.Get get = (Expr.Get)expr.calee;
+            compile(get.object);
+            compileArguments(expr.arguments);
+            int name = makeConstant(get.name.lexeme);
+            line = get.name.line; //lookup errors are reported at the property name...
+            emitOp(OpCode.INVOKE, name);
+            line = expr.paren.line; //...and arity errors at the closing parenthesis
+            emitByte(argCount);
+            adjustStack(-argCount);
+            return null;
+        }
+        if(expr.calee instanceof Expr.Super)
+        {
+            Expr.Super sup = (Expr.Super)expr.calee;
+            loadVariable(sup.keyword, "this");
+            compileArguments(expr.arguments);
+            loadVariable(sup.keyword, "super");
+            int name = makeConstant(sup.method.lexeme);
+            line = sup.method.line;
+            emitOp(OpCode.SUPER_INVOKE, name);
+            line = expr.paren.line;
+            emitByte(argCount);
+            adjustStack(-argCount - 1);
+            return null;
+        }
+        compile(expr.calee);
+        compileArguments(expr.arguments);
+        line = expr.paren.line;
+        emitByteOp(OpCode.CALL, argCount);
+        adjustStack(-argCount);
+        return null;
+    }
+
+    private void compileArguments(List<Expr> arguments)
+    {
+        for(Expr argument : arguments)
+        {
+            compile(argument);
+        }
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr)
+    {
+        compile(expr.object);
+        line = expr.name.line;
+        emitOp(OpCode.GET_PROPERTY, makeConstant(expr.name.lexeme));
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr)
+    {
+        compile(expr.object);
+        compile(expr.value);
+        line = expr.name.line;
+        emitOp(OpCode.SET_PROPERTY, makeConstant(expr.name.lexeme));
+        return null;
+    }
+
+    @Override
+    public Void visitInlineExpr(Expr.Inline expr) //the VM has frames of its own, it just makes the call
+    {
+        compile(expr.call);
+        return null;
+    }
+
+    @Override
+    public Void visitArrayExpr(Expr.Array expr)
+    {
+        for(Expr element : expr.elements)
+        {
+            compile(element);
+        }
+        if(expr.elements.size() > 0xffff) error("Too many elements in an array literal.");
+        emitOp(OpCode.ARRAY, expr.elements.size());
+        adjustStack(1 - expr.elements.size());
+        return null;
+    }
+}
@@ -0,0 +1,130 @@
+package lox;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+//reads and writes a compiled program : the VM's global table followed by the top level VmFunction, nested functions inline in its constants.
+//jloxc writes it into the jar it builds and AotLauncher reads it back, so running the jar never scans, parses, resolves or compiles.
+
+final class BytecodeImage {
+    private static final int MAGIC = 0x4C4F5842; //"LOXB"
+    private static final int VERSION = 3;
+
+    private static final int NUMBER = 1;
+    private static final int STRING = 2;
+    private static final int FUNCTION = 3;
+    private static final int INTEGER = 4;
+
+    private BytecodeImage()
+    {
+    }
+
+    static void write(DataOutputStream out, VM vm, VmFunction script) throws IOException
+    {
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+
+        String[] globals = vm.globalNames();
+        out.writeInt(globals.length);
+        for(String name : globals)
+        {
+            out.writeUTF(name);
+        }
+        writeFunction(out, script);
+    }
+
+    static VmFunction read(DataInputStream in, VM vm) throws IOException
+    {
+        if(in.readInt() != MAGIC || in.readShort() != VERSION) throw new IOException("Not a compiled Lox program.");
+
+        int globalCount = in.readInt();
+        for(int i = 0; i < globalCount; i ++)
+        {
+            if(vm.globalSlot(in.readUTF()) != i) throw new IOException("Global table does not match this VM.");
+        }
+        return readFunction(in);
+    }
+
+    private static void writeFunction(DataOutputStream out, VmFunction function) throws IOException
+    {
+        out.writeBoolean(function.name != null);
+        if(function.name != null) out.writeUTF(function.name);
+        out.writeInt(function.arity);
+        out.writeInt(function.upvalueCount);
+        out.writeInt(function.maxStack);
+
+        Chunk chunk = function.chunk;
+        out.writeInt(chunk.count);
+        out.write(chunk.code, 0, chunk.count);
+        for(int i = 0; i < chunk.count; i ++)
+        {
+            out.writeInt(chunk.lines[i]);
+        }
+
+        out.writeInt(chunk.constantCount);
+        for(int i = 0; i < chunk.constantCount; i ++)
+        {
+            Object constant = chunk.constants[i];
+            if(constant instanceof Double)
+            {
+                out.writeByte(NUMBER);
+                out.writeDouble((double)constant);
+            }
+            else if(constant instanceof Long)
+            {
+                out.writeByte(INTEGER);
+                out.writeLong((long)constant);
+            }
+            else if(constant instanceof String)
+            {
+                out.writeByte(STRING);
+                out.writeUTF((String)constant);
+            }
+            else if(constant instanceof VmFunction)
+            {
+                out.writeByte(FUNCTION);
+                writeFunction(out, (VmFunction)constant);
+            }
+            else
+            {
+                throw new IOException("Cannot store constant " + constant);
+            }
+        }
+    }
+
+    private static VmFunction readFunction(DataInputStream in) throws IOException
+    {
+        VmFunction function = new VmFunction(in.readBoolean() ? in.readUTF() : null);
+        function.arity = in.readInt();
+        function.upvalueCount = in.readInt();
+        function.maxStack = in.readInt();
+
+        Chunk chunk = function.chunk;
+        int count = in.readInt();
+        chunk.code = new byte[Math.max(count, 1)];
+        chunk.lines = new int[chunk.code.length];
+        in.readFully(chunk.code, 0, count);
+        for(int i = 0; i < count; i ++)
+        {
+            chunk.lines[i] = in.readInt();
+        }
+        chunk.count = count;
+
+        int constantCount = in.readInt();
+        chunk.constants = new Object[Math.max(constantCount, 1)];
+        for(int i = 0; i < constantCount; i ++)
+        {
+            int tag = in.readByte();
+            Object constant;
+            if(tag == NUMBER) constant = in.readDouble();
+            else if(tag == INTEGER) constant = in.readLong();
+            else if(tag == STRING) constant = in.readUTF();
+            else if(tag == FUNCTION) constant = readFunction(in);
+            else throw new IOException("Corrupt constant pool.");
+            chunk.constants[i] = constant;
+        }
+        chunk.constantCount = constantCount;
+        return function;
+    }
+}
@@ -0,0 +1,12 @@
+package lox;
+
+//a local variable some closure captured. The frame that declared it and every closure that captured it hold the same Cell,
+//so an assignment through any of them is seen by all of them.
+final class Cell {
+    Object value;
+
+    Cell(Object value)
+    {
+        this.value = value;
+    }
+}
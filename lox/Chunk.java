@@ -0,0 +1,41 @@
+package lox;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+//a compiled function body : the bytecode, the source line of every byte (for runtime errors) and the constant pool.
+class Chunk {
+    byte[] code = new byte[64];
+    int[] lines = new int[64];
+    int count = 0;
+    Object[] constants = new Object[8];
+    int constantCount = 0;
+    private final Map<Object, Integer> constantIndex = new HashMap<>(); //identical numbers and strings share one pool entry
+
+    void write(int b, int line)
+    {
+        if(count == code.length)
+        {
+            code = Arrays.copyOf(code, count * 2);
+            lines = Arrays.copyOf(lines, count * 2);
+        }
+        code[count] = (byte)b;
+        lines[count] = line;
+        count++;
+    }
+
+    int addConstant(Object value)
+    {
+        Integer existing = constantIndex.get(value);
+        if(existing != null) return existing;
+
+        if(constantCount == constants.length)
+        {
+            constants = Arrays.copyOf(constants, constantCount * 2);
+        }
+        constants[constantCount] = value;
+        constantIndex.put(value, constantCount);
+        return constantCount++;
+    }
+}
@@ -0,0 +1,472 @@
+package lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//just enough of a JVM class file writer for the JIT : one class, one field, a constructor and one method.
+//Classes are written as version 49 (Java 5) so the JVM verifies them by type inference and we never have to emit StackMapTable frames.
+
+class ClassFile {
+    private static final int VERSION = 49;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1; //entry 0 is reserved by the format
+
+    private final List<byte[]> fields = new ArrayList<>();
+    private final List<byte[]> methods = new ArrayList<>();
+    private final int thisClass;
+    private final int superClass;
+    private final int[] interfaces;
+
+    ClassFile(String name, String superName, String... interfaceNames)
+    {
+        thisClass = classRef(name);
+        superClass = classRef(superName);
+        interfaces = new int[interfaceNames.length];
+        for(int i = 0; i < interfaces.length; i ++)
+        {
+            interfaces[i] = classRef(interfaceNames[i]);
+        }
+    }
+
+    //---------------------------------------------------------------- constant pool
+
+    private int entry(String key, int tag, Object a, Object b)
+    {
+        Integer existing = poolIndex.get(key);
+        if(existing != null) return existing;
+        try
+        {
+            pool.writeByte(tag);
+            switch(tag)
+            {
+                case 1: pool.writeUTF((String)a); break; //Utf8
+                case 3: pool.writeInt((Integer)a); break; //Integer
+                case 6: pool.writeDouble((Double)a); break; //Double
+                case 7: case 8: pool.writeShort((Integer)a); break; //Class, String
+                default: pool.writeShort((Integer)a); pool.writeShort((Integer)b); break; //refs and NameAndType
+            }
+        }
+        catch(IOException e)
+        {
+            throw new IllegalStateException(e); //cannot happen, it is an in memory stream
+        }
+        poolIndex.put(key, poolCount);
+        int index = poolCount;
+        poolCount += tag == 6 ? 2 : 1; //a double takes two entries
+        return index;
+    }
+
+    int utf8(String value)
+    {
+        return entry("U" + value, 1, value, null);
+    }
+
+    int integer(int value)
+    {
+        return entry("I" + value, 3, value, null);
+    }
+
+    int doubleConstant(double value)
+    {
+        return entry("D" + Double.doubleToRawLongBits(value), 6, value, null);
+    }
+
+    int classRef(String name)
+    {
+        return entry("C" + name, 7, utf8(name), null);
+    }
+
+    int string(String value)
+    {
+        return entry("S" + value, 8, utf8(value), null);
+    }
+
+    private int nameAndType(String name, String descriptor)
+    {
+        return entry("N" + name + " " + descriptor, 12, utf8(name), utf8(descriptor));
+    }
+
+    int fieldRef(String owner, String name, String descriptor)
+    {
+        return entry("F" + owner + "." + name + " " + descriptor, 9, classRef(owner), nameAndType(name, descriptor));
+    }
+
+    int methodRef(String owner, String name, String descriptor)
+    {
+        return entry("M" + owner + "." + name + descriptor, 10, classRef(owner), nameAndType(name, descriptor));
+    }
+
+    //---------------------------------------------------------------- members
+
+    void field(int access, String name, String descriptor)
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try
+        {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(0); //no attributes
+        }
+        catch(IOException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        fields.add(bytes.toByteArray());
+    }
+
+    void method(int access, String name, String descriptor, Code code)
+    {
+        int codeName = utf8("Code");
+        byte[] body = code.finish();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try
+        {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(1); //one attribute, Code
+            out.writeShort(codeName);
+            out.writeInt(12 + body.length);
+            out.writeShort(code.maxStack);
+            out.writeShort(code.maxLocals);
+            out.writeInt(body.length);
+            out.write(body);
+            out.writeShort(0); //no exception table
+            out.writeShort(0); //no attributes
+        }
+        catch(IOException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        methods.add(bytes.toByteArray());
+    }
+
+    byte[] toByteArray()
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try
+        {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(poolCount);
+            out.write(poolBytes.toByteArray());
+            out.writeShort(0x0030); //ACC_FINAL | ACC_SUPER, package private
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaces.length);
+            for(int i : interfaces) out.writeShort(i);
+            out.writeShort(fields.size());
+            for(byte[] f : fields) out.write(f);
+            out.writeShort(methods.size());
+            for(byte[] m : methods) out.write(m);
+            out.writeShort(0); //no class attributes
+        }
+        catch(IOException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    //---------------------------------------------------------------- method bodies
+
+    static final class Label {
+        int position = -1;
+        final List<Integer> jumps = new ArrayList<>(); //offsets of branch instructions waiting for this label
+    }
+
+    //bytecode of one method. Every emit helper tracks the operand stack depth so maxStack comes out right.
+    final class Code {
+        private byte[] code = new byte[256];
+        private int length = 0;
+        int stack = 0;
+        int maxStack = 0;
+        int maxLocals;
+
+        Code(int maxLocals)
+        {
+            this.maxLocals = maxLocals;
+        }
+
+        private void u1(int b)
+        {
+            if(length == code.length) code = Arrays.copyOf(code, length * 2);
+            code[length++] = (byte)b;
+        }
+
+        private void u2(int v)
+        {
+            u1(v >> 8);
+            u1(v);
+        }
+
+        private void op(int opcode, int stackDelta)
+        {
+            u1(opcode);
+            stack += stackDelta;
+            if(stack > maxStack) maxStack = stack;
+        }
+
+        void aconstNull()
+        {
+            op(0x01, 1);
+        }
+
+        void iconst(int value)
+        {
+            if(value >= -1 && value <= 5) op(0x03 + value, 1);
+            else if(value >= -128 && value <= 127) { op(0x10, 1); u1(value); }
+            else if(value >= -32768 && value <= 32767) { op(0x11, 1); u2(value); }
+            else { op(0x13, 1); u2(integer(value)); }
+        }
+
+        void dconst(double value)
+        {
+            if(Double.doubleToRawLongBits(value) == 0) op(0x0e, 2); //0.0, but not -0.0
+            else if(value == 1) op(0x0f, 2);
+            else { op(0x14, 2); u2(doubleConstant(value)); } //ldc2_w
+        }
+
+        void ldcString(String value)
+        {
+            int index = string(value);
+            if(index < 256) { op(0x12, 1); u1(index); }
+            else { op(0x13, 1); u2(index); }
+        }
+
+        void aload(int local)
+        {
+            if(local <= 3) op(0x2a + local, 1);
+            else if(local < 256) { op(0x19, 1); u1(local); }
+            else { op(0xc4, 0); op(0x19, 1); u2(local); } //wide
+            if(local >= maxLocals) maxLocals = local + 1;
+        }
+
+        void astore(int local)
+        {
+            if(local <= 3) op(0x4b + local, -1);
+            else if(local < 256) { op(0x3a, -1); u1(local); }
+            else { op(0xc4, 0); op(0x3a, -1); u2(local); }
+            if(local >= maxLocals) maxLocals = local + 1;
+        }
+
+        void dload(int local) //a double takes two stack slots and two locals
+        {
+            if(local < 256) { op(0x18, 2); u1(local); }
+            else { op(0xc4, 0); op(0x18, 2); u2(local); }
+            if(local + 1 >= maxLocals) maxLocals = local + 2;
+        }
+
+        void dstore(int local)
+        {
+            if(local < 256) { op(0x39, -2); u1(local); }
+            else { op(0xc4, 0); op(0x39, -2); u2(local); }
+            if(local + 1 >= maxLocals) maxLocals = local + 2;
+        }
+
+        void daload()
+        {
+            op(0x31, 0);
+        }
+
+        void dastore()
+        {
+            op(0x52, -4);
+        }
+
+        void dadd()
+        {
+            op(0x63, -2);
+        }
+
+        void dsub()
+        {
+            op(0x67, -2);
+        }
+
+        void dmul()
+        {
+            op(0x6b, -2);
+        }
+
+        void dneg()
+        {
+            op(0x77, 0);
+        }
+
+        void dup2()
+        {
+            op(0x5c, 2);
+        }
+
+        void pop2()
+        {
+            op(0x58, -2);
+        }
+
+        void aaload()
+        {
+            op(0x32, -1);
+        }
+
+        void aastore()
+        {
+            op(0x53, -3);
+        }
+
+        void pop()
+        {
+            op(0x57, -1);
+        }
+
+        void dup()
+        {
+            op(0x59, 1);
+        }
+
+        void areturn()
+        {
+            op(0xb0, -1);
+        }
+
+        void vreturn()
+        {
+            op(0xb1, 0);
+        }
+
+        void anewarray(String type)
+        {
+            op(0xbd, 0);
+            u2(classRef(type));
+        }
+
+        void checkcast(String type)
+        {
+            op(0xc0, 0);
+            u2(classRef(type));
+        }
+
+        void getstatic(String owner, String name, String descriptor)
+        {
+            op(0xb2, 1);
+            u2(fieldRef(owner, name, descriptor));
+        }
+
+        void getfield(String owner, String name, String descriptor)
+        {
+            op(0xb4, 0);
+            u2(fieldRef(owner, name, descriptor));
+        }
+
+        void putfield(String owner, String name, String descriptor)
+        {
+            op(0xb5, -2);
+            u2(fieldRef(owner, name, descriptor));
+        }
+
+        void invokestatic(String owner, String name, String descriptor)
+        {
+            op(0xb8, returnSlots(descriptor) - argumentSlots(descriptor));
+            u2(methodRef(owner, name, descriptor));
+        }
+
+        void invokespecial(String owner, String name, String descriptor)
+        {
+            op(0xb7, returnSlots(descriptor) - argumentSlots(descriptor) - 1);
+            u2(methodRef(owner, name, descriptor));
+        }
+
+        private void jump(int opcode, int stackDelta, Label target)
+        {
+            int at = length;
+            op(opcode, stackDelta);
+            u2(0);
+            if(target.position >= 0) patch(at, target.position);
+            else target.jumps.add(at);
+        }
+
+        void ifeq(Label target)
+        {
+            jump(0x99, -1, target);
+        }
+
+        void ifne(Label target)
+        {
+            jump(0x9a, -1, target);
+        }
+
+        void goTo(Label target)
+        {
+            jump(0xa7, 0, target);
+        }
+
+        void mark(Label label)
+        {
+            label.position = length;
+            for(int at : label.jumps) patch(at, length);
+            label.jumps.clear();
+        }
+
+        private void patch(int at, int target)
+        {
+            int offset = target - at;
+            if(offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) throw new IllegalStateException("Branch too far.");
+            code[at + 1] = (byte)(offset >> 8);
+            code[at + 2] = (byte)offset;
+        }
+
+        int length()
+        {
+            return length;
+        }
+
+        byte[] finish()
+        {
+            if(length > 65535) throw new IllegalStateException("Method too large.");
+            return Arrays.copyOf(code, length);
+        }
+    }
+
+    //operand stack slots taken by the parameters/return value of a method descriptor.
+    private static int argumentSlots(String descriptor)
+    {
+        int slots = 0;
+        int i = 1;
+        while(descriptor.charAt(i) != ')')
+        {
+            boolean array = false;
+            while(descriptor.charAt(i) == '[')
+            {
+                array = true;
+                i++;
+            }
+            char c = descriptor.charAt(i);
+            if(c == 'L') i = descriptor.indexOf(';', i);
+            slots += (!array && (c == 'J' || c == 'D')) ? 2 : 1;
+            i++;
+        }
+        return slots;
+    }
+
+    private static int returnSlots(String descriptor)
+    {
+        char r = descriptor.charAt(descriptor.indexOf(')') + 1);
+        if(r == 'V') return 0;
+        if(r == 'J' || r == 'D') return 2;
+        return 1;
+    }
+}
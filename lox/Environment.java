@@ -4,67 +4,81 @@ import java.util.HashMap;
 import java.util.Map;
 
 public class Environment {
-    private final Map<String, Object> values = new HashMap<>();
-    final Environment enclosing;
+    //only the global environment has names, it is null for every other environment. Each global gets its Cell the first time the Resolver
+    //sees the name (even before the declaration has run, or in a later REPL line), and the variables using it keep that Cell.
+    private final Map<String, Cell> values;
+    final Object[] slots; //local variables live at the slot index the Resolver assigned to them, captured ones inside a Cell.
+    final double[] numbers; //unboxed storage for the locals TypeInference proved numeric, only the Interpreter uses it
+    Cell[] upvalues; //the captured variables of the running closure, only changes when Interpreter.pushFrame() reuses the Environment
 
-    Environment()
+    static final Cell[] NO_UPVALUES = new Cell[0];
+    static final Object UNDEFINED = new Object(); //value of a global whose declaration has not run yet
+
+    Environment() //the global environment
     {
-        this.enclosing = null;
+        this.upvalues = NO_UPVALUES;
+        this.values = new HashMap<>();
+        this.slots = null;
+        this.numbers = null;
     }
-    Environment(Environment encl) //define the immediately enclosing scope.
+    Environment(Cell[] upvalues, int size) //a frame : the upvalues of the closure running in it and how many locals it declares.
     {
-        this.enclosing = encl;
+        this.upvalues = upvalues;
+        this.values = null;
+        this.slots = new Object[size];
+        this.numbers = new double[size];
     }
     void define(String name, Object val)
     {
-        values.put(name, val);
+        global(name).value = val;
     }
 
-    Object getAt(Integer distance, String name)
+    Cell global(String name)
     {
-        Environment environment = this;
-        for(int i = 0; i < distance; i ++)
+        Cell cell = values.get(name);
+        if(cell == null)
         {
-            environment = environment.enclosing;
+            cell = new Cell(UNDEFINED);
+            values.put(name, cell);
         }
+        return cell;
+    }
 
-        return environment.values.get(name);
+    void define(int slot, Object val)
+    {
+        slots[slot] = val;
     }
 
-    void assignAt(Integer distance, Token name, Object value)
+    Cell[] capture(int[] captures) //the upvalues of a closure created while this frame runs, see Resolver
     {
-        Environment environment = this;
-        for(int i = 0; i < distance; i ++)
+        if(captures.length == 0) return NO_UPVALUES;
+
+        Cell[] cells = new Cell[captures.length];
+        for(int i = 0; i < captures.length; i ++)
         {
-            environment = environment.enclosing;
+            int capture = captures[i];
+            cells[i] = capture >= 0 ? (Cell)slots[capture] : upvalues[-1 - capture];
         }
-
-        environment.values.put(name.lexeme, value);
+        return cells;
     }
 
-    Object get(Token name)
+    static Object get(Cell global, Token name)
     {
-        if(values.containsKey(name.lexeme))
+        Object value = global.value;
+        if(value != UNDEFINED)
         {
-            return values.get(name.lexeme);
+            return value;
         }
 
-        if(enclosing != null) return enclosing.get(name);
-        
         throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
-        
+
     }
 
-    void assign(Token name, Object val)
+    static void assign(Cell global, Token name, Object val)
     {
-        if(values.containsKey(name.lexeme))
-        {
-            values.put(name.lexeme, val);
-            return;
-        }
-        if(enclosing != null)
+        if(global.value != UNDEFINED)
         {
-            enclosing.assign(name, val);
+            global.value = val;
             return;
         }
         throw new RuntimeError(name, "Undefined varibale '" + name.lexeme + "'.");
@@ -19,6 +19,7 @@ abstract class Expr {
     R visitSetExpr(Set expr);
     R visitAnonymousFunctionExpr(AnonymousFunction expr);
     R visitArrayExpr(Array expr);
+    R visitInlineExpr(Inline expr);
   }
   static class Assign extends Expr {
     Assign(Token name, Expr value) {
@@ -32,7 +33,12 @@ abstract class Expr {
     }
 
     final Token name;
-    final Expr value;
+    Expr value;
+    int slot = -1;
+    boolean cell = false;
+    int upvalue = -1;
+    Cell global = null;
+    boolean number = false;
   }
   static class Binary extends Expr {
     Binary(Expr left, Token operator, Expr right) {
@@ -46,9 +52,10 @@ abstract class Expr {
       return visitor.visitBinaryExpr(this);
     }
 
-    final Expr left;
+    Expr left;
     final Token operator;
-    final Expr right;
+    Expr right;
+    boolean numberOperands = false;
   }
   static class Grouping extends Expr {
     Grouping(Expr expression) {
@@ -60,7 +67,7 @@ abstract class Expr {
       return visitor.visitGroupingExpr(this);
     }
 
-    final Expr expression;
+    Expr expression;
   }
   static class Literal extends Expr {
     Literal(Object value) {
@@ -86,9 +93,9 @@ abstract class Expr {
       return visitor.visitLogicalExpr(this);
     }
 
-    final Expr left;
+    Expr left;
     final Token operator;
-    final Expr right;
+    Expr right;
   }
   static class Unary extends Expr {
     Unary(Token operator, Expr right) {
@@ -102,7 +109,8 @@ abstract class Expr {
     }
 
     final Token operator;
-    final Expr right;
+    Expr right;
+    boolean number = false;
   }
   static class Ternary extends Expr {
     Ternary(Expr Condition, Expr TrueBranch, Expr FalseBranch) {
@@ -116,9 +124,9 @@ abstract class Expr {
       return visitor.visitTernaryExpr(this);
     }
 
-    final Expr Condition;
-    final Expr TrueBranch;
-    final Expr FalseBranch;
+    Expr Condition;
+    Expr TrueBranch;
+    Expr FalseBranch;
   }
   static class Variable extends Expr {
     Variable(Token name) {
@@ -131,6 +139,11 @@ abstract class Expr {
     }
 
     final Token name;
+    int slot = -1;
+    boolean cell = false;
+    int upvalue = -1;
+    Cell global = null;
+    boolean number = false;
   }
   static class This extends Expr {
     This(Token keyword) {
@@ -143,6 +156,9 @@ abstract class Expr {
     }
 
     final Token keyword;
+    int slot = -1;
+    boolean cell = false;
+    int upvalue = -1;
   }
   static class Super extends Expr {
     Super(Token keyword, Token method) {
@@ -157,6 +173,8 @@ abstract class Expr {
 
     final Token keyword;
     final Token method;
+    int upvalue = -1;
+    Expr.This self = null;
   }
   static class Call extends Expr {
     Call(Expr calee, Token paren, List<Expr> arguments) {
@@ -170,9 +188,11 @@ abstract class Expr {
       return visitor.visitCallExpr(this);
     }
 
-    final Expr calee;
+    Expr calee;
     final Token paren;
     final List<Expr> arguments;
+    Stmt target = null;
+    boolean guarded = false;
   }
   static class Get extends Expr {
     Get(Expr object, Token name) {
@@ -185,8 +205,9 @@ abstract class Expr {
       return visitor.visitGetExpr(this);
     }
 
-    final Expr object;
+    Expr object;
     final Token name;
+    InlineCache cache = new InlineCache();
   }
   static class Set extends Expr {
     Set(Expr object, Token name, Expr value) {
@@ -200,9 +221,10 @@ abstract class Expr {
       return visitor.visitSetExpr(this);
     }
 
-    final Expr object;
+    Expr object;
     final Token name;
-    final Expr value;
+    Expr value;
+    InlineCache cache = new InlineCache();
   }
   static class AnonymousFunction extends Expr {
     AnonymousFunction(List<Token> parameters, List<Stmt> body) {
@@ -217,6 +239,9 @@ abstract class Expr {
 
     final List<Token> parameters;
     final List<Stmt> body;
+    int slotCount = 0;
+    int[] cellParams = null;
+    int[] captures = null;
   }
   static class Array extends Expr {
     Array(List<Expr> elements) {
@@ -230,6 +255,26 @@ abstract class Expr {
 
     final List<Expr> elements;
   }
+  static class Inline extends Expr {
+    Inline(Expr.Call call, Cell global, Stmt.Function function, int slot, Expr body) {
+      this.call = call;
+      this.global = global;
+      this.function = function;
+      this.slot = slot;
+      this.body = body;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitInlineExpr(this);
+    }
+
+    final Expr.Call call;
+    final Cell global;
+    final Stmt.Function function;
+    final int slot;
+    Expr body;
+  }
 
   abstract <R> R accept(Visitor<R> visitor);
 }
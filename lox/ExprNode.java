@@ -0,0 +1,1059 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//executable expression nodes built once from the resolved AST by NodeCompiler.
+//Every node already knows its operator, variable slot or constant, so evaluating it is a single virtual call with no visitor dispatch.
+
+abstract class ExprNode {
+    abstract Object execute(Environment frame);
+
+    double executeDouble(Environment frame) throws UnexpectedResult //for parents that want a number, overridden where the value can be produced unboxed
+    {
+        return expectDouble(execute(frame));
+    }
+
+    long executeLong(Environment frame) throws UnexpectedResult //the same for parents that want an integer
+    {
+        return expectLong(execute(frame));
+    }
+
+    static double expectDouble(Object value) throws UnexpectedResult
+    {
+        if(value instanceof Double) return (double)value;
+        if(value instanceof Long) return (long)value;
+        throw new UnexpectedResult(value);
+    }
+
+    static long expectLong(Object value) throws UnexpectedResult
+    {
+        if(value instanceof Long) return (long)value;
+        throw new UnexpectedResult(value);
+    }
+
+    static final class Constant extends ExprNode {
+        final Object value;
+
+        Constant(Object value)
+        {
+            this.value = value;
+        }
+
+        @Override
+        Object execute(Environment frame)
+        {
+            return value;
+        }
+
+        @Override
+        double executeDouble(Environment frame) throws UnexpectedResult
+        {
+            return expectDouble(value);
+        }
+
+        @Override
+        long executeLong(Environment frame) throws UnexpectedResult
+        {
+            return expectLong(value);
+        }
+    }
+
+    //---------------------------------------------------------------- variables
+
+    static final class LocalGet extends ExprNode { //variable in the running function's frame
+        final int slot;
+
+        LocalGet(int slot)
+        {
+            this.slot = slot;
+        }
+
+        @Override
+        Object execute(Environment frame)
+        {
+            return frame.slots[slot];
+        }
+    }
+
+    static final class CellGet extends ExprNode { //same, for a variable some closure captured
+        final int slot;
+
+        CellGet(int slot)
+        {
+            this.slot = slot;
+        }
+
+        @Override
+        Object execute(Environment frame)
+        {
+            return ((Cell)frame.slots[slot]).value;
+        }
+    }
+
+    static final class UpvalueGet extends ExprNode { //variable of an enclosing function, captured by the running closure
+        final int index;
+
+        UpvalueGet(int index)
+        {
+            this.index = index;
+        }
+
+        @Override
+        Object execute(Environment frame)
+        {
+            return frame.upvalues[index].value;
+        }
+    }
+
+    static final class LocalSet extends ExprNode {
+        final int slot;
+        final ExprNode value;
+
+        LocalSet(int slot, ExprNode value)
+        {
+            this.slot = slot;
+            this.value = value;
+        }
+
+        @Override
+        Object execute(Environment frame)
+        {
+            return frame.slots[slot] = value.execute(frame);
+        }
+    }
+
+    static final class CellSet extends ExprNode {
+        final int slot;
+        final ExprNode value;
+
+        CellSet(int slot, ExprNode value)
+        {
+            this.slot = slot;
+            this.value = value;
+        }
+
+        @Override
+        Object execute(Environment frame)
+        {
+            Object val = value.execute(frame);
+            ((Cell)frame.slots[slot]).value = val;
+            return val;
+        }
+    }
+
+    static final class UpvalueSet extends ExprNode {
+        final int index;
+        final ExprNode value;
+
+        UpvalueSet(int index, ExprNode value)
+        {
+            this.index = index;
+            this.value = value;
+        }
+
+        @Override
+        Object execute(Environment frame)
+        {
+            Object val = value.execute(frame);
+            frame.upvalues[index].value = val;
+            return val;
+        }
+    }
+
+    static final class GlobalGet extends ExprNode {
+        final Cell global;
+        final Token name;
+
+        GlobalGet(Cell global, Token name)
+        {
+            this.global = global;
+            this.name = name;
+        }
+
+        @Override
+        Object execute(Environment frame)
+        {
+            return Environment.get(global, name);
+        }
+    }
+
+    static final class GlobalSet extends ExprNode {
+        final Cell global;
+        final Token name;
+        final ExprNode value;
+
+        GlobalSet(Cell global, Token name, ExprNode value)
+        {
+            this.global = global;
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override
+        Object execute(Environment frame)
+        {
+            Object val = value.execute(frame);
+            Environment.assign(global, name, val);
+            return val;
+        }
+    }
+
+    //---------------------------------------------------------------- operators
+
+    //Arithmetic and comparison nodes specialise themselves on the operand types they actually see.
+    //The first evaluation records whether both operands were integers (LONG) or at least numbers (DOUBLE). From then on the node pulls unboxed
+    //longs or doubles straight out of its children with executeLong() / executeDouble(). When a LONG site meets a double it widens to DOUBLE,
+    //the first time a DOUBLE assumption fails the node falls back to GENERIC (the Interpreter's exact semantics) for good, so a site that mixes
+    //types only pays for the failed guess once.
+
+    abstract static class BinaryNode extends ExprNode {
+        static final int UNINITIALIZED = 0;
+        static final int LONG = 1;
+        static final int DOUBLE = 2;
+        static final int GENERIC = 3;
+
+        final ExprNode left;
+        final ExprNode right;
+        final Token operator;
+        int state = UNINITIALIZED;
+
+        BinaryNode(ExprNode left, ExprNode right, Token operator)
+        {
+            this.left = left;
+            this.right = right;
+            this.operator = operator;
+        }
+
+        abstract Object generic(Object l, Object r); //what Interpreter.visitBinaryExpr does for this operator
+
+        Object deoptimize(Object l, Object r)
+        {
+            state = (state == LONG && Numbers.isNumber(l) && Numbers.isNumber(r)) ? DOUBLE : GENERIC;
+            return generic(l, r);
+        }
+
+        Object executeGeneric(Environment frame)
+        {
+            Object l = left.execute(frame);
+            Object r = right.execute(frame);
+            if(state == UNINITIALIZED)
+            {
+                if(l instanceof Long && r instanceof Long) state = LONG;
+                else state = (Numbers.isNumber(l) && Numbers.isNumber(r)) ? DOUBLE : GENERIC;
+            }
+            return generic(l, r);
+        }
+    }
+
+    abstract static class ArithmeticNode extends BinaryNode {
+        ArithmeticNode(ExprNode left, ExprNode right, Token operator)
+        {
+            super(left, right, operator);
+        }
+
+        abstract double apply(double l, double r);
+
+        abstract long apply(long l, long r) throws UnexpectedResult; //throws the Double when the result is no longer an exact integer
+
+        static long exact(long value) throws UnexpectedResult
+        {
+            if(value > Numbers.MAX_EXACT || value < -Numbers.MAX_EXACT) throw new UnexpectedResult((double)value);
+            return value;
+        }
+
+        @Override
+        Object execute(Environment frame)
+        {
+            if(state == LONG)
+            {
+                try
+                {
+                    return executeLong(frame);
+                }
+                catch(UnexpectedResult e)
+                {
+                    return e.result;
+                }
+            }
+            if(state != DOUBLE) return executeGeneric(frame);
+
+            double l;
+            try
+            {
+                l = left.executeDouble(frame);
+            }
+            catch(UnexpectedResult e)
+            {
+                return deoptimize(e.result, right.execute(frame));
+            }
+            double r;
+            try
+            {
+                r = right.executeDouble(frame);
+            }
+            catch(UnexpectedResult e)
+            {
+                return deoptimize(l, e.result);
+            }
+            return apply(l, r);
+        }
+
+        @Override
+        long executeLong(Environment frame) throws UnexpectedResult
+        {
+            if(state != LONG) return expectLong(execute(frame));
+
+            long l;
+            try
+            {
+                l = left.executeLong(frame);
+            }
+            catch(UnexpectedResult e)
+            {
+                return expectLong(deoptimize(e.result, right.execute(frame)));
+            }
+            long r;
+            try
+            {
+                r = right.executeLong(frame);
+            }
+            catch(UnexpectedResult e)
+            {
+                return expectLong(deoptimize(l, e.result));
+            }
+            return apply(l, r);
+        }
+
+        @Override
+        double executeDouble(Environment frame) throws UnexpectedResult
+        {
+            if(state != DOUBLE) return expectDouble(execute(frame));
+
+            double l;
+            try
+            {
+                l = left.executeDouble(frame);
+            }
+            catch(UnexpectedResult e)
+            {
+                return expectDouble(deoptimize(e.result, right.execute(frame)));
+            }
+            double r;
+            try
+            {
+                r = right.executeDouble(frame);
+            }
+            catch(UnexpectedResult e)
+            {
+                return expectDouble(deoptimize(l, e.result));
+            }
+            return apply(l, r);
+        }
+    }
+
+    abstract static class ComparisonNode extends BinaryNode {
+        ComparisonNode(ExprNode left, ExprNode right, Token operator)
+        {
+            super(left, right, operator);
+        }
+
+        abstract boolean compare(double l, double r);
+
+        abstract boolean compare(long l, long r);
+
+        @Override
+        Object generic(Object l, Object r)
+        {
+            Interpreter.checkNumberOperands(operator, l, r);
+            if(l instanceof Long && r instanceof Long) return compare((long)l, (long)r);
+            return compare(Numbers.toDouble(l), Numbers.toDouble(r));
+        }
+
+        @Override
+        Object execute(Environment frame)
+        {
+            if(state == LONG)
+            {
+                long l;
+                try
+                {
+                    l = left.executeLong(frame);
+                }
+                catch(UnexpectedResult e)
+                {
+                    return deoptimize(e.result, right.execute(frame));
+                }
+                long r;
+                try
+                {
+                    r = right.executeLong(frame);
+                }
+                catch(UnexpectedResult e)
+                {
+                    return deoptimize(l, e.result);
+                }
+                return compare(l, r);
+            }
+            if(state != DOUBLE) return executeGeneric(frame);
+
+            double l;
+            try
+            {
+                l = left.executeDouble(frame);
+            }
+            catch(UnexpectedResult e)
+            {
+                return deoptimize(e.result, right.execute(frame));
+            }
+            double r;
+            try
+            {
+                r = right.executeDouble(frame);
+            }
+            catch(UnexpectedResult e)
+            {
+                return deoptimize(l, e.result);
+            }
+            return compare(l, r);
+        }
+    }
+
+    static final class Add extends ArithmeticNode {
+        Add(ExprNode left, ExprNode right, Token operator)
+        {
+            super(left, right, operator);
+        }
+
+        @Override
+        double apply(double l, double r)
+        {
+            return l + r;
+        }
+
+        @Override
+        long apply(long l, long r) throws UnexpectedResult
+        {
+            return exact(l + r);
+        }
+
+        @Override
+        Object generic(Object l, Object r)
+        {
+            if(l instanceof String && r instanceof String) return (String)l + (String)r;
+            if(Numbers.isNumber(l) && Numbers.isNumber(r)) return Numbers.add(l, r);
+            if(l instanceof String && Numbers.isNumber(r)) return (String)l + Numbers.concat(r);
+            if(Numbers.isNumber(l) && r instanceof String) return Numbers.concat(l) + (String)r;
+            throw new RuntimeError(operator, "Operands must be either numbers or strings");
+        }
+    }
+
+    static final class Subtract extends ArithmeticNode {
+        Subtract(ExprNode left, ExprNode right, Token operator)
+        {
+            super(left, right, operator);
+        }
+
+        @Override
+        double apply(double l, double r)
+        {
+            return l - r;
+        }
+
+        @Override
+        long apply(long l, long r) throws UnexpectedResult
+        {
+            return exact(l - r);
+        }
+
+        @Override
+        Object generic(Object l, Object r)
+        {
+            Interpreter.checkNumberOperand(operator, r);
+            return Numbers.subtract(l, r);
+        }
+    }
+
+    static final class Multiply extends ArithmeticNode {
+        Multiply(ExprNode left, ExprNode right, Token operator)
+        {
+            super(left, right, operator);
+        }
+
+        @Override
+        double apply(double l, double r)
+        {
+            return l * r;
+        }
+
+        @Override
+        long apply(long l, long r) throws UnexpectedResult
+        {
+            return expectLong(Numbers.multiply(l, r));
+        }
+
+        @Override
+        Object generic(Object l, Object r)
+        {
+            Interpreter.checkNumberOperands(operator, l, r);
+            return Numbers.multiply(l, r);
+        }
+    }
+
+    static final class Divide extends ArithmeticNode {
+        Divide(ExprNode left, ExprNode right, Token operator)
+        {
+            super(left, right, operator);
+        }
+
+        @Override
+        double apply(double l, double r)
+        {
+            if(r == 0) throw new RuntimeError(operator, "Division by Zero is not permitted");
+            return l / r;
+        }
+
+        @Override
+        long apply(long l, long r) throws UnexpectedResult
+        {
+            return expectLong(Numbers.divide(l, r, operator));
+        }
+
+        @Override
+        Object generic(Object l, Object r)
+        {
+            Interpreter.checkNumberOperands(operator, l, r);
+            return Numbers.divide(l, r, operator);
+        }
+    }
+
+    static final class Greater extends ComparisonNode {
+        Greater(ExprNode left, ExprNode right, Token operator)
+        {
+            super(left, right, operator);
+        }
+
+        @Override
+        boolean compare(double l, double r)
+        {
+            return l > r;
+        }
+
+        @Override
+        boolean compare(long l, long r)
+        {
+            return l > r;
+        }
+    }
+
+    static final class GreaterEqual extends ComparisonNode {
+        GreaterEqual(ExprNode left, ExprNode right, Token operator)
+        {
+            super(left, right, operator);
+        }
+
+        @Override
+        boolean compare(double l, double r)
+        {
+            return l >= r;
+        }
+
+        @Override
+        boolean compare(long l, long r)
+        {
+            return l >= r;
+        }
+    }
+
+    static final class Less extends ComparisonNode {
+        Less(ExprNode left, ExprNode right, Token operator)
+        {
+            super(left, right, operator);
+        }
+
+        @Override
+        boolean compare(double l, double r)
+        {
+            return l < r;
+        }
+
+        @Override
+        boolean compare(long l, long r)
+        {
+            return l < r;
+        }
+    }
+
+    static final class LessEqual extends ComparisonNode {
+        LessEqual(ExprNode left, ExprNode right, Token operator)
+        {
+            super(left, right, operator);
+        }
+
+        @Override
+        boolean compare(double l, double r)
+        {
+            return l <= r;
+        }
+
+        @Override
+        boolean compare(long l, long r)
+        {
+            return l <= r;
+        }
+    }
+
+    static final class Equal extends ExprNode {
+        final ExprNode left;
+        final ExprNode right;
+
+        Equal(ExprNode left, ExprNode right)
+        {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object execute(Environment frame)
+        {
+            return Interpreter.isEqual(left.execute(frame), right.execute(frame));
+        }
+    }
+
+    static final class NotEqual extends ExprNode {
+        final ExprNode left;
+        final ExprNode right;
+
+        NotEqual(ExprNode left, ExprNode right)
+        {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object execute(Environment frame)
+        {
+            return !Interpreter.isEqual(left.execute(frame), right.execute(frame));
+        }
+    }
+
+    static final class Negate extends ExprNode {
+        final ExprNode right;
+
+        Negate(ExprNode right)
+        {
+            this.right = right;
+        }
+
+        @Override
+        Object execute(Environment frame)
+        {
+            return Numbers.negate(right.execute(frame));
+        }
+
+        @Override
+        long executeLong(Environment frame) throws UnexpectedResult
+        {
+            long value;
+            try
+            {
+                value = right.executeLong(frame);
+            }
+            catch(UnexpectedResult e)
+            {
+                return expectLong(Numbers.negate(e.result));
+            }
+            if(value == 0) throw new UnexpectedResult(-0.0);
+            return -value;
+        }
+
+        @Override
+        double executeDouble(Environment frame) throws UnexpectedResult
+        {
+            try
+            {
+                return -right.executeDouble(frame);
+            }
+            catch(UnexpectedResult e)
+            {
+                return -(double)e.result; //same ClassCastException the Interpreter hits for a non-number
+            }
+        }
+    }
+
+    static final class Not extends ExprNode { //same result as Interpreter.visitUnaryExpr for '!', the operand's truthiness
+        final ExprNode right;
+
+        Not(ExprNode right)
+        {
+            this.right = right;
+        }
+
+        @Override
+        Object execute(Environment frame)
+        {
+            return Interpreter.isTruthy(right.execute(frame));
+        }
+    }
+
+    static final class And extends ExprNode {
+        final ExprNode left;
+        final ExprNode right;
+
+        And(ExprNode left, ExprNode right)
+        {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object execute(Environment frame)
+        {
+            Object l = left.execute(frame);
+            if(!Interpreter.isTruthy(l)) return l;
+            return right.execute(frame);
+        }
+    }
+
+    static final class Or extends ExprNode {
+        final ExprNode left;
+        final ExprNode right;
+
+        Or(ExprNode left, ExprNode right)
+        {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object execute(Environment frame)
+        {
+            Object l = left.execute(frame);
+            if(Interpreter.isTruthy(l)) return l;
+            return right.execute(frame);
+        }
+    }
+
+    static final class Ternary extends ExprNode {
+        final ExprNode condition;
+        final ExprNode trueBranch;
+        final ExprNode falseBranch;
+
+        Ternary(ExprNode condition, ExprNode trueBranch, ExprNode falseBranch)
+        {
+            this.condition = condition;
+            this.trueBranch = trueBranch;
+            this.falseBranch = falseBranch;
+        }
+
+        @Override
+        Object execute(Environment frame)
+        {
+            if(Interpreter.isTruthy(condition.execute(frame))) return trueBranch.execute(frame);
+            return falseBranch.execute(frame);
+        }
+    }
+
+    //---------------------------------------------------------------- calls and objects
+
+    static final class Inline extends ExprNode { //see Optimizer : the body of a small function, run in the caller's frame
+        final Cell global;
+        final Stmt.Function function;
+        final int slot;
+        final ExprNode[] arguments;
+        final ExprNode body;
+        final ExprNode call;
+
+        Inline(Cell global, Stmt.Function function, int slot, ExprNode[] arguments, ExprNode body, ExprNode call)
+        {
+            this.global = global;
+            this.function = function;
+            this.slot = slot;
+            this.arguments = arguments;
+            this.body = body;
+            this.call = call;
+        }
+
+        private boolean enter(Environment frame) //false when the global was rebound and the real call has to be made
+        {
+            if(!LoxFunction.declaredBy(global.value, function)) return false;
+            for(int i = 0; i < arguments.length; i ++)
+            {
+                frame.slots[slot + i] = arguments[i].execute(frame);
+            }
+            return true;
+        }
+
+        @Override
+        Object execute(Environment frame)
+        {
+            if(!enter(frame)) return call.execute(frame);
+            return body.execute(frame);
+        }
+
+        @Override
+        double executeDouble(Environment frame) throws UnexpectedResult
+        {
+            if(!enter(frame)) return expectDouble(call.execute(frame));
+            return body.executeDouble(frame);
+        }
+
+        @Override
+        long executeLong(Environment frame) throws UnexpectedResult
+        {
+            if(!enter(frame)) return expectLong(call.execute(frame));
+            return body.executeLong(frame);
+        }
+    }
+
+    static final class Call extends ExprNode {
+        final Interpreter interpreter;
+        final ExprNode callee;
+        final ExprNode[] arguments;
+        final Token paren;
+
+        Call(Interpreter interpreter, ExprNode callee, ExprNode[] arguments, Token paren)
+        {
+            this.interpreter = interpreter;
+            this.callee = callee;
+            this.arguments = arguments;
+            this.paren = paren;
+        }
+
+        @Override
+        Object execute(Environment frame)
+        {
+            Object function = callee.execute(frame);
+            return call(interpreter, function, null, arguments, frame, paren);
+        }
+
+        //evaluates the arguments the way Interpreter.visitCallExpr does and finishes the call with Interpreter.call()
+        static Object call(Interpreter interpreter, Object function, LoxInstance receiver, ExprNode[] arguments, Environment frame, Token paren)
+        {
+            int count = arguments.length;
+            Object a0 = count > 0 ? arguments[0].execute(frame) : null;
+            Object a1 = count > 1 ? arguments[1].execute(frame) : null;
+            Object a2 = count > 2 ? arguments[2].execute(frame) : null;
+            Object[] rest = null;
+            if(count > 3)
+            {
+                rest = new Object[count - 3];
+                for(int i = 3; i < count; i ++)
+                {
+                    rest[i - 3] = arguments[i].execute(frame);
+                }
+            }
+            return Interpreter.call(interpreter, function, receiver, count, a0, a1, a2, rest, paren);
+        }
+    }
+
+    //a call the Resolver bound to a function or class, skips the checks of Interpreter.call(). guard is the declaration a global callee
+    //still has to come from, null when the callee can not be anything else.
+    static final class BoundCall extends ExprNode {
+        final Interpreter interpreter;
+        final ExprNode callee;
+        final Stmt.Function guard;
+        final ExprNode[] arguments;
+        final Token paren;
+
+        BoundCall(Interpreter interpreter, ExprNode callee, Stmt.Function guard, ExprNode[] arguments, Token paren)
+        {
+            this.interpreter = interpreter;
+            this.callee = callee;
+            this.guard = guard;
+            this.arguments = arguments;
+            this.paren = paren;
+        }
+
+        @Override
+        Object execute(Environment frame)
+        {
+            Object function = callee.execute(frame);
+            if(guard != null && !LoxFunction.declaredBy(function, guard)) return Call.call(interpreter, function, null, arguments, frame, paren);
+            int count = arguments.length;
+            Object a0 = count > 0 ? arguments[0].execute(frame) : null;
+            Object a1 = count > 1 ? arguments[1].execute(frame) : null;
+            Object a2 = count > 2 ? arguments[2].execute(frame) : null;
+            Object[] rest = null;
+            if(count > 3)
+            {
+                rest = new Object[count - 3];
+                for(int i = 3; i < count; i ++)
+                {
+                    rest[i - 3] = arguments[i].execute(frame);
+                }
+            }
+            return Interpreter.callBound(interpreter, function, a0, a1, a2, rest);
+        }
+    }
+
+    //obj.m(...) as one node : m is looked up unbound and obj goes straight into its frame, so no bound method is allocated.
+    static final class Invoke extends ExprNode {
+        final Interpreter interpreter;
+        final ExprNode object;
+        final Token name;
+        final ExprNode[] arguments;
+        final Token paren;
+        final InlineCache cache = new InlineCache();
+
+        Invoke(Interpreter interpreter, ExprNode object, Token name, ExprNode[] arguments, Token paren)
+        {
+            this.interpreter = interpreter;
+            this.object = object;
+            this.name = name;
+            this.arguments = arguments;
+            this.paren = paren;
+        }
+
+        @Override
+        Object execute(Environment frame)
+        {
+            Object target = object.execute(frame);
+            if(!(target instanceof LoxInstance)) throw new RuntimeError(name, "Only instances have properties.");
+            LoxInstance receiver = (LoxInstance)target;
+            Object function = cache.getForInvoke(receiver, name);
+            return Call.call(interpreter, function, receiver, arguments, frame, paren);
+        }
+    }
+
+    //super.m(...), 'this' is the receiver.
+    static final class SuperInvoke extends ExprNode {
+        final Interpreter interpreter;
+        final int upvalue;
+        final ExprNode self;
+        final Token method;
+        final ExprNode[] arguments;
+        final Token paren;
+
+        SuperInvoke(Interpreter interpreter, int upvalue, ExprNode self, Token method, ExprNode[] arguments, Token paren)
+        {
+            this.interpreter = interpreter;
+            this.upvalue = upvalue;
+            this.self = self;
+            this.method = method;
+            this.arguments = arguments;
+            this.paren = paren;
+        }
+
+        @Override
+        Object execute(Environment frame)
+        {
+            LoxInstance receiver = (LoxInstance)self.execute(frame);
+            Object function = Super.find((LoxClass)frame.upvalues[upvalue].value, method);
+            return Call.call(interpreter, function, receiver, arguments, frame, paren);
+        }
+    }
+
+    static final class Get extends ExprNode {
+        final ExprNode object;
+        final Token name;
+        final InlineCache cache = new InlineCache();
+
+        Get(ExprNode object, Token name)
+        {
+            this.object = object;
+            this.name = name;
+        }
+
+        @Override
+        Object execute(Environment frame)
+        {
+            Object obj = object.execute(frame);
+            if(obj instanceof LoxInstance) return cache.get((LoxInstance)obj, name);
+            throw new RuntimeError(name, "Only instances have properties.");
+        }
+    }
+
+    static final class Set extends ExprNode {
+        final ExprNode object;
+        final Token name;
+        final ExprNode value;
+        final InlineCache cache = new InlineCache();
+
+        Set(ExprNode object, Token name, ExprNode value)
+        {
+            this.object = object;
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override
+        Object execute(Environment frame)
+        {
+            Object obj = object.execute(frame);
+            if(!(obj instanceof LoxInstance)) throw new RuntimeError(name, "Only instances have fields.");
+            Object val = value.execute(frame);
+            cache.set((LoxInstance)obj, name, val);
+            return val;
+        }
+    }
+
+    static final class Super extends ExprNode {
+        final int upvalue;
+        final ExprNode self;
+        final Token method;
+
+        Super(int upvalue, ExprNode self, Token method)
+        {
+            this.upvalue = upvalue;
+            this.self = self;
+            this.method = method;
+        }
+
+        @Override
+        Object execute(Environment frame)
+        {
+            LoxFunction found = find((LoxClass)frame.upvalues[upvalue].value, method);
+            if(found.isUnbound()) return found.bind((LoxInstance)self.execute(frame)); //self is the 'this' of the method using super
+            return found;
+        }
+
+        static LoxFunction find(LoxClass superclass, Token method) //an instance method comes back unbound, a static one as it is
+        {
+            LoxFunction found = superclass.findMethod(method.lexeme);
+            if(found != null) return found;
+
+            LoxFunction staticmethod = superclass.get(method);
+            if(staticmethod != null) return staticmethod;
+
+            throw new RuntimeError(method, "Undefined property " + method.lexeme + " .");
+        }
+    }
+
+    static final class Lambda extends ExprNode {
+        final Expr.AnonymousFunction declaration;
+        final StmtNode[] body;
+
+        Lambda(Expr.AnonymousFunction declaration, StmtNode[] body)
+        {
+            this.declaration = declaration;
+            this.body = body;
+        }
+
+        @Override
+        Object execute(Environment frame)
+        {
+            return new NodeLambda(declaration, frame.capture(declaration.captures), body);
+        }
+    }
+
+    static final class ArrayLiteral extends ExprNode {
+        final ExprNode[] elements;
+
+        ArrayLiteral(ExprNode[] elements)
+        {
+            this.elements = elements;
+        }
+
+        @Override
+        Object execute(Environment frame)
+        {
+            List<Object> values = new ArrayList<>(elements.length);
+            for(ExprNode element : elements)
+            {
+                values.add(element.execute(frame));
+            }
+            return new LoxArray(values);
+        }
+    }
+}
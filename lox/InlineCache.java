@@ -0,0 +1,102 @@
+package lox;
+
+//per site cache for property gets and sets, keyed by the receiver's Shape, which also pins down its LoxClass since every class
+//has its own root shape. Shapes and classes never change once created, so whatever a site learns about one stays right forever.
+//A site remembers up to POLYMORPHIC_LIMIT shapes, after that it is megamorphic and always does the full lookup.
+//  get : shape -> field index, or the method the name resolves to
+//  set : shape -> field index and the shape the instance has after the store (itself, or the next one when the field is new)
+
+final class InlineCache {
+    private static final int POLYMORPHIC_LIMIT = 4;
+
+    private final Shape[] keys = new Shape[POLYMORPHIC_LIMIT];
+    private final int[] slots = new int[POLYMORPHIC_LIMIT];
+    private final LoxFunction[] methods = new LoxFunction[POLYMORPHIC_LIMIT];
+    private final Shape[] nextShapes = new Shape[POLYMORPHIC_LIMIT];
+    private int size = 0; //-1 once the site went megamorphic
+
+    private int find(Shape key)
+    {
+        for(int i = 0; i < size; i ++)
+        {
+            if(keys[i] == key) return i;
+        }
+        return -1;
+    }
+
+    private void record(Shape key, int slot, LoxFunction method, Shape nextShape)
+    {
+        if(size == -1) return;
+        if(size == POLYMORPHIC_LIMIT)
+        {
+            size = -1;
+            return;
+        }
+        keys[size] = key;
+        slots[size] = slot;
+        methods[size] = method;
+        nextShapes[size] = nextShape;
+        size++;
+    }
+
+    //what Interpreter.visitGetExpr does once it knows the object is an instance.
+    Object get(LoxInstance instance, Token name)
+    {
+        Object value = getForInvoke(instance, name);
+        if(value instanceof LoxFunction && ((LoxFunction)value).isUnbound()) return ((LoxFunction)value).bind(instance);
+        return value;
+    }
+
+    //get() for the callee of obj.m(...) : a method comes back unbound and the call hands obj to it directly.
+    Object getForInvoke(LoxInstance instance, Token name)
+    {
+        if(instance.getClass() != LoxInstance.class) return instance.get(name); //classes and arrays have their own get()
+
+        Shape shape = instance.shape;
+        int hit = find(shape);
+        if(hit != -1)
+        {
+            if(slots[hit] != -1) return instance.values[slots[hit]];
+            return methods[hit];
+        }
+
+        int slot = shape.indexOf(name.lexeme); //fields shadow methods, so they are always checked first
+        if(slot != -1)
+        {
+            record(shape, slot, null, null);
+            return instance.values[slot];
+        }
+
+        LoxFunction method = instance.klass.findMethod(name.lexeme);
+        if(method == null || name.lexeme.equals("init")) return instance.get(name); //statics and errors stay on the slow path
+        record(shape, -1, method, null);
+        return method;
+    }
+
+    //what LoxInstance.set does.
+    void set(LoxInstance instance, Token name, Object value)
+    {
+        Shape shape = instance.shape;
+        int hit = find(shape);
+        if(hit != -1)
+        {
+            int slot = slots[hit];
+            if(nextShapes[hit] != shape) instance.addField(nextShapes[hit]);
+            instance.values[slot] = value;
+            return;
+        }
+
+        int slot = shape.indexOf(name.lexeme);
+        if(slot == -1)
+        {
+            Shape next = shape.with(name.lexeme);
+            slot = instance.addField(next);
+            record(shape, slot, null, next);
+        }
+        else
+        {
+            record(shape, slot, null, shape);
+        }
+        instance.values[slot] = value;
+    }
+}
@@ -1,15 +1,23 @@
 package lox;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
+public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Interpreter.Completion>{
+
+    //how a statement finished. break and return just hand this back up to the enclosing loop or function call,
+    //nothing is thrown and nothing is allocated.
+    enum Completion { NORMAL, BREAK, RETURN }
 
     public boolean Mode_REPL = false;
+    boolean nodeMode = false; //run programs as compiled ExprNode/StmtNode trees instead of visiting the AST
     final Environment globals = new Environment();
-    private Environment environment = globals;
-    private final Map<Expr, Integer> locals = new HashMap<>();
+    Environment environment = globals; //the scope the code being run sees, LoxFunction.invoke() swaps its frame in
+    private Object returnValue = null; //value of the 'return' that produced the last Completion.RETURN
+    private Environment[] frames = new Environment[64]; //reusable call frames, nothing ever holds on to a frame so calls allocate no Environment
+    private int frameCount = 0;
 
     Interpreter()
     {
@@ -22,6 +30,12 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
 
             @Override
             public Object call(Interpreter interpreter, List<Object> arguments)
+            {
+                return call0(interpreter);
+            }
+
+            @Override
+            public Object call0(Interpreter interpreter)
             {
                 return (double)System.currentTimeMillis() / 1000.0;
             }
@@ -40,6 +54,11 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
         this.Mode_REPL = repl_mode;
         try 
         {
+            if(nodeMode)
+            {
+                StmtNode.executeAll(new NodeCompiler(this).compile(statements, repl_mode), globals);
+                return;
+            }
             for(Stmt statement : statements)
             {
                 execute(statement);
@@ -55,46 +74,93 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
         }
     }
 
-    private Void execute(Stmt stmt)
+    private Completion execute(Stmt stmt)
+    {
+        return stmt.accept(this);
+    }
+
+    Object returnValue() //hands the returned value over to the function call that got Completion.RETURN
+    {
+        Object value = returnValue;
+        returnValue = null;
+        return value;
+    }
+
+    private void declare(int slot, Token name, Object value) //slot is -1 for variables the Resolver left to the globals
     {
-        stmt.accept(this);
-        return null;
+        if(slot == -1) environment.define(name.lexeme, value);
+        else environment.define(slot, value);
     }
 
-    void resolve(Expr expr, int depth)
+    private Cell declareCell(int slot) //a captured variable gets its Cell before its value is computed, so a closure made meanwhile already shares it
     {
-        locals.put(expr, depth);    
+        Cell cell = new Cell(null);
+        environment.define(slot, cell);
+        return cell;
     }
 
 
     @Override 
-    public Void visitVarStmt(Stmt.Var stmt)
+    public Completion visitVarStmt(Stmt.Var stmt)
     {
+        if(stmt.number) //TypeInference proved the variable only holds numbers, it lives unboxed
+        {
+            environment.numbers[stmt.slot] = evaluateDouble(stmt.intializer);
+            return Completion.NORMAL;
+        }
+        Cell cell = stmt.cell ? declareCell(stmt.slot) : null;
         Object value = null;
         if(stmt.intializer != null)
         {
             value = evaluate(stmt.intializer);
         }
-        environment.define(stmt.name.lexeme, value);
-        return null;
+        if(cell != null) cell.value = value;
+        else declare(stmt.slot, stmt.name, value);
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitFunctionStmt(Stmt.Function stmt)
+    public Completion visitFunctionStmt(Stmt.Function stmt)
     {
-        LoxFunction function = new LoxFunction(stmt, environment);   
-        environment.define(stmt.name.lexeme, function);
-        return null;
+        Cell cell = stmt.cell ? declareCell(stmt.slot) : null; //a local function that calls itself captures its own Cell
+        LoxFunction function = new LoxFunction(stmt, environment.capture(stmt.captures));   
+        if(cell != null) cell.value = function;
+        else declare(stmt.slot, stmt.name, function);
+        return Completion.NORMAL;
     }   
 
     @Override
-    public Void visitBlockStmt(Stmt.Block stmt)
+    public Completion visitBlockStmt(Stmt.Block stmt)
     {
-        executeBlock(stmt.Statements, new Environment(environment));
-        return null;
+        if(stmt.slotCount == 0) return executeBlock(stmt.Statements, environment); //the block's variables live in the enclosing function's frame
+        return executeBlock(stmt.Statements, new Environment(Environment.NO_UPVALUES, stmt.slotCount)); //a top level block, the globals have no slots
     }    
 
-    public void executeBlock(List<Stmt> statements, Environment env)
+    Environment pushFrame(Cell[] upvalues, int size) //the frame for a call, handed back with popFrame(). Closures only keep Cells, never the frame
+    {
+        if(frameCount == frames.length) frames = Arrays.copyOf(frames, frameCount * 2);
+        Environment frame = frames[frameCount];
+        if(frame == null || frame.slots.length < size)
+        {
+            frame = new Environment(upvalues, size);
+            frames[frameCount] = frame;
+        }
+        else
+        {
+            frame.upvalues = upvalues;
+        }
+        frameCount++;
+        return frame;
+    }
+
+    void popFrame(int size)
+    {
+        Environment frame = frames[--frameCount];
+        Arrays.fill(frame.slots, 0, size, null); //dont keep the dead locals alive
+        frame.upvalues = null;
+    }
+
+    public Completion executeBlock(List<Stmt> statements, Environment env)
     {
         boolean prev = this.Mode_REPL; //we dont want expressionstatements inside blocks to be printed in repl mode
         this.Mode_REPL = false;
@@ -103,8 +169,10 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
             this.environment = env;
             for(Stmt statement : statements)
             {
-                execute(statement);
+                Completion completion = execute(statement);
+                if(completion != Completion.NORMAL) return completion; //stop at a break or return, the loop or call above deals with it
             }
+            return Completion.NORMAL;
         }
         finally
         {
@@ -114,63 +182,109 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
     }
     
     @Override
-    public Void visitExpressionStmt(Stmt.Expression stmt)
+    public Completion visitExpressionStmt(Stmt.Expression stmt)
     {
         if(Mode_REPL)System.out.println(stringify(evaluate(stmt.expression)));
-        else evaluate(stmt.expression);
-        return null;
+        else discard(stmt.expression);
+        return Completion.NORMAL;
+    }
+
+    private void discard(Expr expr) //evaluates an expression whose value nobody uses, so 'i = i + 1' never boxes the result
+    {
+        if(expr instanceof Expr.Assign && ((Expr.Assign)expr).number) evaluateDouble(expr);
+        else evaluate(expr);
     }
 
     @Override
-    public Void visitPrintStmt(Stmt.Print stmt)
+    public Completion visitPrintStmt(Stmt.Print stmt)
     {
         Object val = evaluate(stmt.expression);
         System.out.println(stringify(val));
-        return null;
+        return Completion.NORMAL;
     }
 
 
     @Override
-    public Void visitIfStmt(Stmt.If stmt)
+    public Completion visitIfStmt(Stmt.If stmt)
     {
         boolean truth;
         Object cond = evaluate(stmt.condition);
         if(cond == null)truth = false;
         else if(cond instanceof Boolean) truth = (boolean)cond;
         else truth = true;
-        if(truth) execute(stmt.trueBranch);
-        else if(stmt.falseBranch != null) execute(stmt.falseBranch);
+        if(truth) return execute(stmt.trueBranch);
+        else if(stmt.falseBranch != null) return execute(stmt.falseBranch);
 
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitWhileStmt(Stmt.While stmt)
+    public Completion visitWhileStmt(Stmt.While stmt)
     {
         boolean prev = this.Mode_REPL; //we dont want expressionstatements inside a while body to be printed in REPL Mode(Note that even assignments in Lox are expression so it was causing an issue where the increment/decrement was also being printed in REPL mode, this is a fix to that issue)
         this.Mode_REPL = false;
         try{
+            if(stmt.jitted != null) return runLoop(stmt.jitted);
+            while(isTruthy(evaluate(stmt.condition)))
+            {
+                Completion completion = execute(stmt.body);
+                if(completion == Completion.BREAK) break;
+                if(completion == Completion.RETURN) return completion; //a return inside the loop body ends the whole function
+                JitLoop compiled = Jit.loop(stmt, environment.slots != null); //a back-edge, a hot loop goes on as JVM bytecode from the next condition
+                if(compiled != null) return runLoop(compiled);
+            }
+        }
+        finally
+        {
+            this.Mode_REPL = prev;
+        }
+        return Completion.NORMAL;
+    }
+
+    @Override
+    public Completion visitForStmt(Stmt.For stmt)
+    {
+        boolean prev = this.Mode_REPL; //none of the clauses get printed in REPL mode, same as in a while loop
+        this.Mode_REPL = false;
+        Environment previous = this.environment;
+        try{
+            if(stmt.slotCount != 0) this.environment = new Environment(Environment.NO_UPVALUES, stmt.slotCount); //a top level loop, see visitBlockStmt
+            if(stmt.initializer != null) execute(stmt.initializer);
+            if(stmt.jitted != null) return runLoop(stmt.jitted);
             while(isTruthy(evaluate(stmt.condition)))
             {
-                execute(stmt.body);
+                Completion completion = execute(stmt.body);
+                if(completion == Completion.BREAK) break; //a break skips the increment too
+                if(completion == Completion.RETURN) return completion;
+                if(stmt.increment != null) discard(stmt.increment);
+                JitLoop compiled = Jit.loop(stmt, environment.slots != null);
+                if(compiled != null) return runLoop(compiled);
             }
         }
-        catch(Break err)
+        finally
         {
-            //do nothing lol
+            this.environment = previous;
+            this.Mode_REPL = prev;
         }
-        this.Mode_REPL = prev;
-        return null;
+        return Completion.NORMAL;
+    }
+
+    private Completion runLoop(JitLoop compiled) //the rest of a loop as compiled code, in the frame the loop is running in
+    {
+        Object result = compiled.run(this, environment.upvalues, environment);
+        if(result == JitLoop.NORMAL) return Completion.NORMAL;
+        returnValue = result;
+        return Completion.RETURN;
     }
 
     @Override
-    public Void visitBreakStmt(Stmt.Break stmt)
+    public Completion visitBreakStmt(Stmt.Break stmt)
     {
-        throw new Break(stmt.breakToken);
+        return Completion.BREAK;
     }
 
     @Override 
-    public Void visitReturnStmt(Stmt.Return stmt)
+    public Completion visitReturnStmt(Stmt.Return stmt)
     {
         Object value = null;
         if(stmt.value != null)
@@ -178,16 +292,19 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
             value = evaluate(stmt.value);
         }
 
-        throw new Return(value, stmt.keyword);
+        returnValue = value;
+        return Completion.RETURN;
     }
 
     @Override 
-    public Void visitClassStmt(Stmt.Class stmt)
+    public Completion visitClassStmt(Stmt.Class stmt)
     {
         Map<String, LoxFunction> methods = new HashMap<>();
         Map<String, LoxFunction> staticmethods = new HashMap<>();
 
+        Cell cell = stmt.cell ? declareCell(stmt.slot) : null;
         Object superclass = null;
+        Environment previous = environment;
         if(stmt.superclass != null)
         {
             superclass = evaluate(stmt.superclass);
@@ -195,38 +312,45 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
             {
                 throw new RuntimeError(stmt.superclass.name, "A class can only inherit from another class.(Superclass must be a class)");
             }
-            environment = new Environment(environment); //for handling super.
-            environment.define("super", superclass);
+            environment = new Environment(environment.capture(stmt.captures), 1); //for handling super, the methods capture it from here
+            environment.define(0, new Cell(superclass));
         }
         for(Stmt.Function method : stmt.methods)
         {
-            LoxFunction func = new LoxFunction(method, environment);
+            LoxFunction func = new LoxFunction(method, environment.capture(method.captures));
             methods.put(method.name.lexeme, func);
         }
         for(Stmt.Function staticmethod : stmt.staticmethods)
         {
-            LoxFunction func = new LoxFunction(staticmethod, environment);
+            LoxFunction func = new LoxFunction(staticmethod, environment.capture(staticmethod.captures));
             staticmethods.put(staticmethod.name.lexeme, func);
         }
 
-        if(superclass != null) environment = environment.enclosing;
+        environment = previous;
 
-        environment.define(stmt.name.lexeme, new LoxClass(stmt.name.lexeme, (LoxClass)superclass,  methods, staticmethods));
-        return null;
+        LoxClass klass = new LoxClass(stmt.name.lexeme, (LoxClass)superclass,  methods, staticmethods);
+        if(cell != null) cell.value = klass;
+        else declare(stmt.slot, stmt.name, klass);
+        return Completion.NORMAL;
     }
 
     @Override 
     public Object visitAssignExpr(Expr.Assign expr)
     {
+        if(expr.number) return evaluateDouble(expr);
         Object val = evaluate(expr.value);
-        Integer distance = locals.get(expr);
-        if(distance != null)
+        if(expr.slot != -1)
+        {
+            if(expr.cell) ((Cell)environment.slots[expr.slot]).value = val;
+            else environment.slots[expr.slot] = val;
+        }
+        else if(expr.upvalue != -1)
         {
-            environment.assignAt(distance, expr.name, val);
+            environment.upvalues[expr.upvalue].value = val;
         }
         else
         {
-            globals.assign(expr.name, val);
+            Environment.assign(expr.global, expr.name, val);
         }
         
         return val; //assignment in Lox is an expression so it returns the value being assigned. (Could be useful in chain assignment like a = b = c = 5). (Note : Python treats assignments like statements so no value is returned). btw python somehow manages to do chain assignment even without treating assignment like an expression.
@@ -269,14 +393,48 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
         return expr.accept(this);
     }
 
+    //the unboxed path for expressions TypeInference proved numeric : the operands are known to be numbers, so there are no checks and no
+    //Double is allocated in between. Only the runtime errors a number can still cause are left.
+    double evaluateDouble(Expr expr)
+    {
+        if(expr instanceof Expr.Variable) return environment.numbers[((Expr.Variable)expr).slot];
+        if(expr instanceof Expr.Literal) return Numbers.toDouble(((Expr.Literal)expr).value);
+        if(expr instanceof Expr.Binary)
+        {
+            Expr.Binary binary = (Expr.Binary)expr;
+            double left = evaluateDouble(binary.left);
+            double right = evaluateDouble(binary.right);
+            switch(binary.operator.type)
+            {
+                case PLUS: return left + right;
+                case MINUS: return left - right;
+                case STAR: return left * right;
+                default:
+                    if(right == 0) throw new RuntimeError(binary.operator, "Division by Zero is not permitted");
+                    return left / right;
+            }
+        }
+        if(expr instanceof Expr.Assign)
+        {
+            Expr.Assign assign = (Expr.Assign)expr;
+            return environment.numbers[assign.slot] = evaluateDouble(assign.value);
+        }
+        if(expr instanceof Expr.Grouping) return evaluateDouble(((Expr.Grouping)expr).expression);
+        if(expr instanceof Expr.Unary) return -evaluateDouble(((Expr.Unary)expr).right);
+
+        Expr.Ternary ternary = (Expr.Ternary)expr; //the only numeric expression left
+        return isTruthy(evaluate(ternary.Condition)) ? evaluateDouble(ternary.TrueBranch) : evaluateDouble(ternary.FalseBranch);
+    }
+
     @Override
     public Object visitUnaryExpr(Expr.Unary expr)
     {
+        if(expr.number) return evaluateDouble(expr);
         Object right = evaluate(expr.right);
 
         switch (expr.operator.type) {
             case MINUS:
-                return -(double)right; //even if we return double, java autoboxes it to the Double class which is a subclass of Object 
+                return Numbers.negate(right); //a Long stays a Long, except for -0 which only a Double can hold
         
             case BANG: // false and null are false, everything else is true ;)
                 if (right == null) return false;
@@ -291,6 +449,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
     @Override
     public Object visitBinaryExpr(Expr.Binary expr)
     {
+        if(expr.numberOperands) return binaryDouble(expr);
         Object left = evaluate(expr.left);
         Object right = evaluate(expr.right);
 
@@ -298,16 +457,15 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
         {
             case MINUS:
                 checkNumberOperand(expr.operator, right);
-                return (double)left - (double)right;
+                return Numbers.subtract(left, right);
 
             case STAR:
                 checkNumberOperands(expr.operator, left, right);
-                return (double)left * (double)right;
+                return Numbers.multiply(left, right);
 
             case SLASH:
                 checkNumberOperands(expr.operator, left, right);
-                if((double)right == 0) throw new RuntimeError(expr.operator, "Division by Zero is not permitted");
-                return (double)left / (double)right;
+                return Numbers.divide(left, right, expr.operator);
 
             case PLUS: //TODO : concantenation of a number with a string causes even the leading .0 to be present, remove that eg : 8 + b = 8.0b
 
@@ -315,26 +473,26 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
 
                 if(left instanceof String && right instanceof String) return (String)left + (String)right; //even if one of the operators is a string, concatenate them
                 
-                if(left instanceof Double && right instanceof Double) return (double)left + (double)right; //add only if both are double
+                if(Numbers.isNumber(left) && Numbers.isNumber(right)) return Numbers.add(left, right); //add only if both are numbers
 
-                if(left instanceof String && right instanceof Double) return (String)left + right.toString(); 
+                if(left instanceof String && Numbers.isNumber(right)) return (String)left + Numbers.concat(right); 
 
-                if(left instanceof Double && right instanceof String) return left.toString() + (String)right;
+                if(Numbers.isNumber(left) && right instanceof String) return Numbers.concat(left) + (String)right;
                 
                 throw new RuntimeError(expr.operator, "Operands must be either numbers or strings");
             
             case GREATER:
                 checkNumberOperands(expr.operator, left, right);
-                return (double)left > (double)right;
+                return Numbers.greater(left, right);
             case GREATER_EQUAL:
                 checkNumberOperands(expr.operator, left, right);
-                return (double)left >= (double)right;
+                return Numbers.greaterEqual(left, right);
             case LESS:
                 checkNumberOperands(expr.operator, left, right);
-                return (double)left < (double)right;
+                return Numbers.less(left, right);
             case LESS_EQUAL:
                 checkNumberOperands(expr.operator, left, right);
-                return (double)left <= (double)right;
+                return Numbers.lessEqual(left, right);
             case BANG_EQUAL:
                 return !isEqual(left, right);
             case EQUAL_EQUAL:
@@ -344,6 +502,21 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
         }
     }
 
+    private Object binaryDouble(Expr.Binary expr) //both operands are proven numbers, only the result gets boxed
+    {
+        switch(expr.operator.type)
+        {
+            case GREATER: return evaluateDouble(expr.left) > evaluateDouble(expr.right);
+            case GREATER_EQUAL: return evaluateDouble(expr.left) >= evaluateDouble(expr.right);
+            case LESS: return evaluateDouble(expr.left) < evaluateDouble(expr.right);
+            case LESS_EQUAL: return evaluateDouble(expr.left) <= evaluateDouble(expr.right);
+            //same as isEqual() on the boxed values, which compares bits : NaN equals NaN and 0 does not equal -0
+            case EQUAL_EQUAL: return Double.doubleToLongBits(evaluateDouble(expr.left)) == Double.doubleToLongBits(evaluateDouble(expr.right));
+            case BANG_EQUAL: return Double.doubleToLongBits(evaluateDouble(expr.left)) != Double.doubleToLongBits(evaluateDouble(expr.right));
+            default: return evaluateDouble(expr);
+        }
+    }
+
     @Override 
     public Object visitTernaryExpr(Expr.Ternary expr)
     {
@@ -361,43 +534,111 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
     @Override 
     public Object visitVariableExpr(Expr.Variable expr)
     {
-        return lookUpVariable(expr.name, expr);
+        if(expr.number) return environment.numbers[expr.slot];
+        if(expr.slot != -1)
+        {
+            Object value = environment.slots[expr.slot];
+            return expr.cell ? ((Cell)value).value : value;
+        }
+        if(expr.upvalue != -1) return environment.upvalues[expr.upvalue].value;
+        return Environment.get(expr.global, expr.name);
     }
 
-    private Object lookUpVariable(Token name, Expr expr)
+    @Override
+    public Object visitInlineExpr(Expr.Inline expr)
     {
-        Integer distance = locals.get(expr);
-        if(distance != null)
+        if(!LoxFunction.declaredBy(expr.global.value, expr.function)) return evaluate(expr.call); //the global was rebound, make the real call
+        List<Expr> arguments = expr.call.arguments;
+        for(int i = 0; i < arguments.size(); i ++)
         {
-            return environment.getAt(distance, name.lexeme);
+            environment.slots[expr.slot + i] = evaluate(arguments.get(i));
         }
-        return globals.get(name);
+        return evaluate(expr.body);
     }
 
     @Override
     public Object visitCallExpr(Expr.Call expr)
     {
-        Object callee = evaluate(expr.calee);
-
-        List<Object>args = new ArrayList<>();
+        Object callee;
+        LoxInstance receiver = null;
+        boolean bound = false;
+        if(expr.calee instanceof Expr.Get) //obj.m(...) : m is looked up unbound and obj goes straight into its frame, so no bound method gets allocated
+        {
+            Expr.Get get = (Expr.Get)expr.calee;
+            Object object = evaluate(get.object);
+            if(!(object instanceof LoxInstance))
+            {
+                throw new RuntimeError(get.name, "Only instances have properties.");
+            }
+            receiver = (LoxInstance)object;
+            callee = get.cache.getForInvoke(receiver, get.name);
+        }
+        else if(expr.calee instanceof Expr.Super) //same for super.m(...), with 'this' as the receiver
+        {
+            Expr.Super superExpr = (Expr.Super)expr.calee;
+            receiver = (LoxInstance) evaluate(superExpr.self);
+            callee = findSuperMethod(superExpr);
+        }
+        else
+        {
+            callee = evaluate(expr.calee);
+            bound = expr.target != null && (!expr.guarded || LoxFunction.declaredBy(callee, (Stmt.Function)expr.target));
+        }
 
-        for(Expr expresssion : expr.arguments)
+        int count = expr.arguments.size(); //the first three arguments stay in locals, see LoxCallable.arguments()
+        Object a0 = count > 0 ? evaluate(expr.arguments.get(0)) : null;
+        Object a1 = count > 1 ? evaluate(expr.arguments.get(1)) : null;
+        Object a2 = count > 2 ? evaluate(expr.arguments.get(2)) : null;
+        Object[] rest = null;
+        if(count > 3)
         {
-            args.add(evaluate(expresssion));
+            rest = new Object[count - 3];
+            for(int i = 3; i < count; i ++)
+            {
+                rest[i - 3] = evaluate(expr.arguments.get(i));
+            }
         }
+        if(bound) return callBound(this, callee, a0, a1, a2, rest);
+        return call(this, callee, receiver, count, a0, a1, a2, rest, expr.paren);
+    }
 
+    //call() for a call the Resolver bound to a function or class it knows the callee is (see Resolver.bindCalls()) :
+    //the argument count already matches, so there is nothing left to check
+    static Object callBound(Interpreter interpreter, Object callee, Object a0, Object a1, Object a2, Object[] rest)
+    {
+        if(callee instanceof LoxClass) return ((LoxClass)callee).construct(interpreter, a0, a1, a2, rest);
+        return ((LoxFunction)callee).invoke(interpreter, null, a0, a1, a2, rest);
+    }
+
+    //the end of every call once the callee and the arguments are evaluated, shared with the node engine and the JIT.
+    //receiver is only used when callee is a method that obj.m(...) or super.m(...) looked up unbound.
+    static Object call(Interpreter interpreter, Object callee, LoxInstance receiver, int count, Object a0, Object a1, Object a2, Object[] rest, Token paren)
+    {
         if(!(callee instanceof LoxCallable))
         {
-            throw new RuntimeError(expr.paren, "Can only call functions and classes.");
+            throw new RuntimeError(paren, "Can only call functions and classes.");
         }
 
         LoxCallable function = (LoxCallable) callee; //Again, java is statically typed, so even though we know callee is already of type LoxCallable, we still have to cast it to not get a compile time error.
         
-        if(args.size() != function.arity())
+        if(count != function.arity())
         {
-            throw new RuntimeError(expr.paren, "Expected " + function.arity() + " arguments but got" + args.size() + " .");
+            throw new RuntimeError(paren, "Expected " + function.arity() + " arguments but got" + count + " .");
+        }
+        if(function instanceof LoxClass) return ((LoxClass)function).construct(interpreter, a0, a1, a2, rest);
+        if(function instanceof LoxFunction)
+        {
+            LoxFunction method = (LoxFunction)function;
+            return method.invoke(interpreter, method.isUnbound() ? receiver : method.receiver, a0, a1, a2, rest);
+        }
+        switch(count)
+        {
+            case 0: return function.call0(interpreter);
+            case 1: return function.call1(interpreter, a0);
+            case 2: return function.call2(interpreter, a0, a1);
+            case 3: return function.call3(interpreter, a0, a1, a2);
+            default: return function.call(interpreter, LoxCallable.arguments(count, a0, a1, a2, rest));
         }
-        return function.call(this, args);
     }
 
     @Override
@@ -406,7 +647,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
         Object object = evaluate(expr.object);
         if(object instanceof LoxInstance)
         {
-            return ((LoxInstance) object).get(expr.name);
+            return expr.cache.get((LoxInstance) object, expr.name);
         }
 
         throw new RuntimeError(expr.name, "Only instances have properties.");
@@ -424,27 +665,42 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
 
         Object val = evaluate(expr.value);
         
-        ((LoxInstance) object).set(expr.name, val);
+        expr.cache.set((LoxInstance) object, expr.name, val);
         return val; //similar to regular variable assignment we return the value being assigned.
     }
     
     @Override
     public Object visitThisExpr(Expr.This expr)
     {
-        return lookUpVariable(expr.keyword, expr);
+        //the Resolver rejects 'this' outside of methods, so it is never a global
+        if(expr.slot != -1)
+        {
+            Object value = environment.slots[expr.slot];
+            return expr.cell ? ((Cell)value).value : value;
+        }
+        return environment.upvalues[expr.upvalue].value;
     }
 
     @Override 
     public Object visitSuperExpr(Expr.Super expr)
     {
-        int distance = locals.get(expr);
-        LoxClass superclass = (LoxClass) environment.getAt(distance, "super");
-        LoxInstance object = (LoxInstance) environment.getAt(distance - 1, "this"); //'this' is always one environment inside 'super' due to our structure.
+        LoxFunction method = findSuperMethod(expr);
+        if(method.isUnbound())
+        {
+            LoxInstance object = (LoxInstance) evaluate(expr.self); //the Resolver made self, the 'this' of the method using super
+            return method.bind(object);
+        }
+        return method;
+    }
+
+    private LoxFunction findSuperMethod(Expr.Super expr) //an instance method comes back unbound, a static one as it is
+    {
+        LoxClass superclass = (LoxClass) environment.upvalues[expr.upvalue].value;
 
         LoxFunction method = superclass.findMethod(expr.method.lexeme);
         if(method != null)
         {
-            return method.bind(object);
+            return method;
         }
         
         LoxFunction staticmethod = superclass.get(expr.method);
@@ -459,14 +715,15 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
     @Override
     public Object visitAnonymousFunctionExpr(Expr.AnonymousFunction expr)
     {
-        LoxAnonymousFunction function = new LoxAnonymousFunction(expr, environment);   
+        LoxAnonymousFunction function = new LoxAnonymousFunction(expr, environment.capture(expr.captures));   
         return function;   
     }
 
-    private boolean isEqual(Object left, Object right)
+    static boolean isEqual(Object left, Object right)
     {
         if(left == null && right == null)return true;
         if(left == null || right == null)return false;
+        if(left instanceof Long && Numbers.isNumber(right) || right instanceof Long && Numbers.isNumber(left)) return Numbers.equal(left, right); //3 and 3.0 are the same number
 
         return left.equals(right); //by default Object.equals() compares if they are the same Object, but subclasses of Object like String and Double override this method to compare the contents of the instances.
     }
@@ -484,13 +741,13 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
     }
 
 
-    private void checkNumberOperand(Token operator, Object operand) {
-        if (operand instanceof Double) return;
+    static void checkNumberOperand(Token operator, Object operand) {
+        if (operand instanceof Double || operand instanceof Long) return;
         throw new RuntimeError(operator, "Operand must be a number.");
     }
 
-    private void checkNumberOperands(Token operator, Object left, Object right) {
-        if (left instanceof Double && right instanceof Double) return;
+    static void checkNumberOperands(Token operator, Object left, Object right) {
+        if (Numbers.isNumber(left) && Numbers.isNumber(right)) return;
         
         throw new RuntimeError(operator, "Operands must be numbers.");
     }
@@ -498,16 +755,11 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
     public static String stringify(Object val)
     {   
         if(val == null)return "nil";
-        if(val instanceof Double) //cosmetic to remove trailing .0
-        {
-            String printed = val.toString();
-            if(printed.endsWith(".0"))return printed.substring(0, printed.length() - 2);
-            return printed;
-        }
+        if(val instanceof Double || val instanceof Long) return Numbers.stringify(val);
         return val.toString();
     }
 
-    private boolean isTruthy(Object obj)
+    static boolean isTruthy(Object obj)
     {
         boolean ret;
         if(obj == null) ret = false;
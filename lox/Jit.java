@@ -0,0 +1,100 @@
+package lox;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+
+//decides when a function is hot enough to compile, loads the generated class and keeps the compile log.
+//Compiled code lives on the function's declaration, so every LoxFunction (closure or bound method) made from it shares it.
+//Loops are counted too : a long loop in code that is not compiled (the top level, or a function called only a few times)
+//gets compiled on its own once it has gone round often enough, and the Interpreter hands the rest of the loop over to it.
+
+final class Jit {
+    static final int THRESHOLD = 1000; //calls before a function gets compiled
+    static final int LOOP_THRESHOLD = 1000; //back-edges before a loop gets compiled
+    static boolean enabled = true; //--no-jit turns it off
+    static boolean log = false; //--jit-log prints every compile decision to stderr
+
+    private static Method defineHiddenClass; //looked up reflectively so the sources still build on JDK 8, where the JIT just stays off
+    private static Object noOptions;
+
+    private Jit()
+    {
+    }
+
+    static JitCode entry(Stmt.Function declaration) //called on every invocation, null means run the body in the interpreter
+    {
+        if(declaration.jitted != null) return declaration.jitted;
+        if(!enabled || declaration.calls < 0) return null;
+        if(++declaration.calls < THRESHOLD) return null;
+
+        declaration.calls = -1; //whatever happens next, we only ever try once
+        declaration.jitted = (JitCode)compile(new JitCompiler(declaration), declaration.name.lexeme + "/" + declaration.parameters.size(), declaration.name.line);
+        return declaration.jitted;
+    }
+
+    //called on every back-edge of an interpreted loop, null means keep interpreting. framed says whether the loop runs in a frame
+    //with slots of its own, a loop right at the top level only has the globals (its body may still be a block with a frame).
+    static JitLoop loop(Stmt.While stmt, boolean framed)
+    {
+        if(stmt.jitted != null) return stmt.jitted;
+        if(!enabled || stmt.backEdges < 0) return null;
+        if(++stmt.backEdges < LOOP_THRESHOLD) return null;
+
+        stmt.backEdges = -1;
+        stmt.jitted = (JitLoop)compile(new JitCompiler(stmt, framed), "while loop", stmt.keyword.line);
+        return stmt.jitted;
+    }
+
+    static JitLoop loop(Stmt.For stmt, boolean framed)
+    {
+        if(stmt.jitted != null) return stmt.jitted;
+        if(!enabled || stmt.backEdges < 0) return null;
+        if(++stmt.backEdges < LOOP_THRESHOLD) return null;
+
+        stmt.backEdges = -1;
+        stmt.jitted = (JitLoop)compile(new JitCompiler(stmt, framed), "for loop", stmt.keyword.line);
+        return stmt.jitted;
+    }
+
+    private static Object compile(JitCompiler compiler, String name, int line) //an instance of the generated class, a JitCode or a JitLoop
+    {
+        if(!available()) return null;
+
+        try
+        {
+            byte[] bytes = compiler.compile();
+            MethodHandles.Lookup lookup = (MethodHandles.Lookup)defineHiddenClass.invoke(MethodHandles.lookup(), bytes, true, noOptions);
+            Object code = lookup.lookupClass().getDeclaredConstructor(Object[].class).newInstance((Object)compiler.constants());
+            if(log) System.err.println("[jit] compiled " + name + " (line " + line + ", " + compiler.codeSize() + " bytes of bytecode)");
+            return code;
+        }
+        catch(JitCompiler.Unsupported e)
+        {
+            if(log) System.err.println("[jit] skipped " + name + " (line " + line + "): " + e.getMessage());
+        }
+        catch(Exception | LinkageError e) //a bug in the generated class, keep interpreting rather than take the program down
+        {
+            if(log) System.err.println("[jit] failed " + name + " (line " + line + "): " + e);
+        }
+        return null;
+    }
+
+    private static boolean available()
+    {
+        if(defineHiddenClass != null) return true;
+        try
+        {
+            Class<?> option = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+            noOptions = Array.newInstance(option, 0);
+            defineHiddenClass = MethodHandles.Lookup.class.getMethod("defineHiddenClass", byte[].class, boolean.class, noOptions.getClass());
+            return true;
+        }
+        catch(ReflectiveOperationException e)
+        {
+            enabled = false;
+            if(log) System.err.println("[jit] disabled, this JVM has no hidden classes (needs Java 15 or newer)");
+            return false;
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package lox;
+
+//entry point of a function the JIT compiled to JVM bytecode, implemented by the generated hidden class.
+interface JitCode {
+    Object invoke(Interpreter interpreter, Cell[] upvalues, LoxInstance receiver, Object a0, Object a1, Object a2, Object[] rest); //receiver is null unless the function is a method, arguments are split like in LoxCallable.arguments()
+}
@@ -0,0 +1,816 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+import java.util.TreeSet;
+
+//compiles one hot Lox function into a JVM class implementing JitCode.
+//Only functions that never create closures are compiled : none of their locals is ever captured in a Cell, so every slot of the frame
+//(parameters, body and nested block variables) becomes a plain JVM local and no Environment is allocated at all.
+//Variables from enclosing functions are read and written through the closure's upvalue Cells, globals through the Cell the Resolver bound them to.
+//Every operator goes through a JitRuntime helper so the results (and the errors) are the Interpreter's.
+//Slots TypeInference proved numeric are double locals, and the arithmetic on them is plain JVM double arithmetic.
+//
+//A hot loop is compiled the same way into a JitLoop, which the Interpreter enters in the middle of the loop with the frame it is running in.
+//The slots the loop uses are copied into JVM locals on entry and the ones it writes are copied back when it ends. Nothing else can see
+//the frame meanwhile : calls get frames of their own and the loop may not create closures, so the Cells it finds in the frame stay put.
+
+class JitCompiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    //thrown for anything the JIT does not handle, the function then simply stays interpreted.
+    static class Unsupported extends RuntimeException {
+        Unsupported(String reason)
+        {
+            super(reason, null, false, false);
+        }
+    }
+
+    private static final String OBJECT = "java/lang/Object";
+    private static final String ENVIRONMENT = "lox/Environment";
+    private static final String RUNTIME = "lox/JitRuntime";
+    private static final String BINARY = "(Ljava/lang/Object;Ljava/lang/Object;Llox/Token;)Ljava/lang/Object;";
+
+    //JVM locals of invoke(Interpreter, Cell[], LoxInstance, Object, Object, Object, Object[])
+    private static final int INTERPRETER = 1;
+    private static final int UPVALUES = 2;
+    private static final int RECEIVER = 3;
+    private static final int FRAME = 3; //the Environment in JitLoop.run(Interpreter, Cell[], Environment)
+    private static final int A0 = 4; //a1 and a2 follow
+    private static final int REST = 7;
+    private static final int FIRST_LOCAL = 8;
+    //descriptor of JitRuntime.call and invoke after their leading callee (and receiver) parameters
+    private static final String CALL_TAIL = "ILjava/lang/Object;Ljava/lang/Object;Ljava/lang/Object;[Ljava/lang/Object;Llox/Interpreter;Llox/Token;)Ljava/lang/Object;";
+
+    private final Stmt.Function declaration; //what gets compiled, a function or a loop
+    private final Stmt loop;
+    private final boolean framed; //the loop runs in a frame whose slots it has to load, see Jit.loop()
+    private final String className;
+    private final ClassFile classFile;
+    private ClassFile.Code code;
+
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndex = new IdentityHashMap<>();
+
+    private final Stack<ClassFile.Label> loopExits = new Stack<>();
+
+    //the slots the code touches and the ones it writes, as Objects and as numbers. A compiled loop loads and stores exactly these
+    private final Set<Integer> objectSlots = new TreeSet<>();
+    private final Set<Integer> objectWrites = new TreeSet<>();
+    private final Set<Integer> numberSlots = new TreeSet<>();
+    private final Set<Integer> numberWrites = new TreeSet<>();
+
+    JitCompiler(Stmt.Function declaration)
+    {
+        this.declaration = declaration;
+        this.loop = null;
+        this.framed = false;
+        this.className = "lox/JitFunction$" + declaration.name.lexeme;
+        this.classFile = new ClassFile(className, OBJECT, "lox/JitCode");
+    }
+
+    JitCompiler(Stmt loop, boolean framed) //a Stmt.While or Stmt.For
+    {
+        this.declaration = null;
+        this.loop = loop;
+        this.framed = framed;
+        this.className = "lox/JitLoop$" + (loop instanceof Stmt.While ? "while" : "for");
+        this.classFile = new ClassFile(className, OBJECT, "lox/JitLoop");
+    }
+
+    byte[] compile()
+    {
+        classFile.field(0x0012, "constants", "[Ljava/lang/Object;"); //private final
+
+        ClassFile.Code init = classFile.new Code(2);
+        init.aload(0);
+        init.invokespecial(OBJECT, "<init>", "()V");
+        init.aload(0);
+        init.aload(1);
+        init.putfield(className, "constants", "[Ljava/lang/Object;");
+        init.vreturn();
+        classFile.method(0x0001, "<init>", "([Ljava/lang/Object;)V", init);
+
+        if(loop != null) compileLoop();
+        else compileFunction();
+        return classFile.toByteArray();
+    }
+
+    private void compileFunction()
+    {
+        code = classFile.new Code(local(declaration.slotCount));
+        if(declaration.paramStart == 1) //'this' of a method
+        {
+            code.aload(RECEIVER);
+            storeSlot(0);
+        }
+        for(int i = 0; i < declaration.parameters.size(); i ++)
+        {
+            if(i < 3)
+            {
+                code.aload(A0 + i);
+            }
+            else
+            {
+                code.aload(REST);
+                code.iconst(i - 3);
+                code.aaload();
+            }
+            storeSlot(declaration.paramStart + i);
+        }
+        for(int i = declaration.paramStart + declaration.parameters.size(); i < declaration.slotCount; i ++)
+        {
+            code.aconstNull();
+            storeSlot(i);
+        }
+        compileStatements(declaration.body);
+        code.aconstNull(); //falling off the end returns nil
+        code.areturn();
+
+        classFile.method(0x0001, "invoke", "(Llox/Interpreter;[Llox/Cell;Llox/LoxInstance;Ljava/lang/Object;Ljava/lang/Object;Ljava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;", code);
+    }
+
+    //the Interpreter enters after the initializer of a for loop, so the code starts at the condition. Which slots to load is only known
+    //once the loop is compiled, so the entry jumps over it to the loads at the very end, which jump back.
+    private void compileLoop()
+    {
+        code = classFile.new Code(FIRST_LOCAL);
+        ClassFile.Label entry = new ClassFile.Label();
+        ClassFile.Label start = new ClassFile.Label();
+        ClassFile.Label exit = new ClassFile.Label();
+        code.goTo(entry);
+        if(loop instanceof Stmt.While)
+        {
+            Stmt.While stmt = (Stmt.While)loop;
+            loop(stmt.condition, stmt.body, null, start, exit);
+        }
+        else
+        {
+            Stmt.For stmt = (Stmt.For)loop;
+            loop(stmt.condition, stmt.body, stmt.increment, start, exit);
+        }
+        code.mark(exit);
+        if(framed)
+        {
+            for(int slot : objectWrites)
+            {
+                code.aload(FRAME);
+                code.getfield(ENVIRONMENT, "slots", "[Ljava/lang/Object;");
+                code.iconst(slot);
+                code.aload(local(slot));
+                code.aastore();
+            }
+            for(int slot : numberWrites)
+            {
+                code.aload(FRAME);
+                code.getfield(ENVIRONMENT, "numbers", "[D");
+                code.iconst(slot);
+                code.dload(local(slot));
+                code.dastore();
+            }
+        }
+        code.getstatic("lox/JitLoop", "NORMAL", "Ljava/lang/Object;");
+        code.areturn();
+
+        code.mark(entry);
+        if(framed) //a loop right at the top level has no frame, every slot it uses belongs to a block inside it and is declared there
+        {
+            for(int slot : objectSlots)
+            {
+                code.aload(FRAME);
+                code.getfield(ENVIRONMENT, "slots", "[Ljava/lang/Object;");
+                code.iconst(slot);
+                code.aaload();
+                code.astore(local(slot));
+            }
+            for(int slot : numberSlots)
+            {
+                code.aload(FRAME);
+                code.getfield(ENVIRONMENT, "numbers", "[D");
+                code.iconst(slot);
+                code.daload();
+                code.dstore(local(slot));
+            }
+        }
+        code.goTo(start);
+
+        classFile.method(0x0001, "run", "(Llox/Interpreter;[Llox/Cell;Llox/Environment;)Ljava/lang/Object;", code);
+    }
+
+    Object[] constants()
+    {
+        return constants.toArray();
+    }
+
+    int codeSize()
+    {
+        return code.length();
+    }
+
+    //---------------------------------------------------------------- helpers
+
+    private void constant(Object value, String type)
+    {
+        Integer index = constantIndex.get(value);
+        if(index == null)
+        {
+            index = constants.size();
+            constants.add(value);
+            constantIndex.put(value, index);
+        }
+        code.aload(0);
+        code.getfield(className, "constants", "[Ljava/lang/Object;");
+        code.iconst(index);
+        code.aaload();
+        if(type != null) code.checkcast(type);
+    }
+
+    private void token(Token token)
+    {
+        constant(token, "lox/Token");
+    }
+
+    private void compileStatements(List<Stmt> statements)
+    {
+        for(Stmt statement : statements)
+        {
+            statement.accept(this);
+        }
+    }
+
+    private void compile(Expr expr)
+    {
+        expr.accept(this);
+    }
+
+    private void condition(Expr expr, ClassFile.Label ifFalse)
+    {
+        compile(expr);
+        code.invokestatic("lox/Interpreter", "isTruthy", "(Ljava/lang/Object;)Z");
+        code.ifeq(ifFalse);
+    }
+
+    private static int local(int slot) //every slot gets two JVM locals, so the numeric ones can hold a double
+    {
+        return FIRST_LOCAL + 2 * slot;
+    }
+
+    private void loadSlot(int slot)
+    {
+        objectSlots.add(slot);
+        code.aload(local(slot));
+    }
+
+    private void storeSlot(int slot)
+    {
+        objectSlots.add(slot);
+        objectWrites.add(slot);
+        code.astore(local(slot));
+    }
+
+    private void loadNumber(int slot)
+    {
+        numberSlots.add(slot);
+        code.dload(local(slot));
+    }
+
+    private void storeNumber(int slot)
+    {
+        numberSlots.add(slot);
+        numberWrites.add(slot);
+        code.dstore(local(slot));
+    }
+
+    private void box() //the double on the stack as the Double the Interpreter would have made of it
+    {
+        code.invokestatic("java/lang/Double", "valueOf", "(D)Ljava/lang/Double;");
+    }
+
+    private void loadLocal(int slot, boolean cell, int upvalue) //slot -1 reads the upvalue instead. Only a loop can find a Cell in a slot, see the top
+    {
+        if(slot != -1)
+        {
+            loadSlot(slot);
+            if(cell)
+            {
+                code.checkcast("lox/Cell");
+                code.getfield("lox/Cell", "value", "Ljava/lang/Object;");
+            }
+            return;
+        }
+        code.aload(UPVALUES);
+        code.iconst(upvalue);
+        code.aaload();
+        code.getfield("lox/Cell", "value", "Ljava/lang/Object;");
+    }
+
+    //the value of an expression TypeInference proved numeric as a double on the stack, what Interpreter.evaluateDouble() computes
+    private void compileDouble(Expr expr)
+    {
+        if(expr instanceof Expr.Variable) loadNumber(((Expr.Variable)expr).slot);
+        else if(expr instanceof Expr.Literal) code.dconst(Numbers.toDouble(((Expr.Literal)expr).value));
+        else if(expr instanceof Expr.Binary)
+        {
+            Expr.Binary binary = (Expr.Binary)expr;
+            compileDouble(binary.left);
+            compileDouble(binary.right);
+            switch(binary.operator.type)
+            {
+                case PLUS: code.dadd(); break;
+                case MINUS: code.dsub(); break;
+                case STAR: code.dmul(); break;
+                default:
+                    token(binary.operator);
+                    code.invokestatic(RUNTIME, "divide", "(DDLlox/Token;)D");
+            }
+        }
+        else if(expr instanceof Expr.Assign)
+        {
+            Expr.Assign assign = (Expr.Assign)expr;
+            compileDouble(assign.value);
+            code.dup2();
+            storeNumber(assign.slot);
+        }
+        else if(expr instanceof Expr.Grouping) compileDouble(((Expr.Grouping)expr).expression);
+        else if(expr instanceof Expr.Unary)
+        {
+            compileDouble(((Expr.Unary)expr).right);
+            code.dneg();
+        }
+        else
+        {
+            Expr.Ternary ternary = (Expr.Ternary)expr; //the only numeric expression left
+            ClassFile.Label falseBranch = new ClassFile.Label();
+            ClassFile.Label end = new ClassFile.Label();
+            condition(ternary.Condition, falseBranch);
+            compileDouble(ternary.TrueBranch);
+            code.goTo(end);
+            code.stack -= 2;
+            code.mark(falseBranch);
+            compileDouble(ternary.FalseBranch);
+            code.mark(end);
+        }
+    }
+
+    private void discard(Expr expr) //an expression statement or a for increment, 'i = i + 1' on a numeric slot never boxes
+    {
+        if(expr instanceof Expr.Assign && ((Expr.Assign)expr).number)
+        {
+            compileDouble(expr);
+            code.pop2();
+            return;
+        }
+        compile(expr);
+        code.pop();
+    }
+
+    private void binary(String helper, Expr left, Expr right, Token operator)
+    {
+        compile(left);
+        compile(right);
+        token(operator);
+        code.invokestatic(RUNTIME, helper, BINARY);
+    }
+
+    private void objectArray(List<Expr> exprs)
+    {
+        code.iconst(exprs.size());
+        code.anewarray(OBJECT);
+        for(int i = 0; i < exprs.size(); i ++)
+        {
+            code.dup();
+            code.iconst(i);
+            compile(exprs.get(i));
+            code.aastore();
+        }
+    }
+
+    private void arguments(List<Expr> arguments) //the count, a0..a2 and the rest array, see LoxCallable.arguments()
+    {
+        int count = arguments.size();
+        code.iconst(count);
+        for(int i = 0; i < 3; i ++)
+        {
+            if(i < count) compile(arguments.get(i));
+            else code.aconstNull();
+        }
+        if(count > 3) objectArray(arguments.subList(3, count));
+        else code.aconstNull();
+    }
+
+    //---------------------------------------------------------------- statements
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt)
+    {
+        compileStatements(stmt.Statements); //the Resolver put the block's variables in the function's frame, they already have JVM locals
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt)
+    {
+        discard(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt)
+    {
+        ClassFile.Label elseBranch = new ClassFile.Label();
+        ClassFile.Label end = new ClassFile.Label();
+        condition(stmt.condition, elseBranch);
+        stmt.trueBranch.accept(this);
+        code.goTo(end);
+        code.mark(elseBranch);
+        if(stmt.falseBranch != null) stmt.falseBranch.accept(this);
+        code.mark(end);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt)
+    {
+        compile(stmt.expression);
+        code.invokestatic(RUNTIME, "print", "(Ljava/lang/Object;)V");
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt)
+    {
+        if(stmt.cell) throw new Unsupported("declares a captured variable");
+        if(stmt.number)
+        {
+            compileDouble(stmt.intializer);
+            storeNumber(stmt.slot);
+            return null;
+        }
+        if(stmt.intializer != null) compile(stmt.intializer);
+        else code.aconstNull();
+        storeSlot(stmt.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt)
+    {
+        throw new Unsupported("declares a class");
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt)
+    {
+        ClassFile.Label exit = new ClassFile.Label();
+        loop(stmt.condition, stmt.body, null, new ClassFile.Label(), exit);
+        code.mark(exit);
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(Stmt.For stmt)
+    {
+        ClassFile.Label exit = new ClassFile.Label();
+        if(stmt.initializer != null) stmt.initializer.accept(this); //the loop variable already has its JVM local
+        loop(stmt.condition, stmt.body, stmt.increment, new ClassFile.Label(), exit);
+        code.mark(exit);
+        return null;
+    }
+
+    private void loop(Expr condition, Stmt body, Expr increment, ClassFile.Label start, ClassFile.Label exit) //everything but the exit, increment may be null
+    {
+        code.mark(start);
+        condition(condition, exit);
+        loopExits.push(exit);
+        body.accept(this);
+        loopExits.pop();
+        if(increment != null) discard(increment);
+        code.goTo(start);
+    }
+
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt)
+    {
+        code.goTo(loopExits.peek());
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt)
+    {
+        throw new Unsupported("declares a nested function");
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt)
+    {
+        if(stmt.value != null) compile(stmt.value);
+        else code.aconstNull();
+        code.areturn();
+        return null;
+    }
+
+    //---------------------------------------------------------------- expressions
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr)
+    {
+        if(expr.number)
+        {
+            compileDouble(expr);
+            box();
+            return null;
+        }
+        compile(expr.value);
+        if(expr.slot == -1 && expr.upvalue == -1)
+        {
+            constant(expr.global, "lox/Cell");
+            token(expr.name);
+            code.invokestatic(RUNTIME, "assignGlobal", "(Ljava/lang/Object;Llox/Cell;Llox/Token;)Ljava/lang/Object;");
+        }
+        else if(expr.slot != -1 && expr.cell)
+        {
+            loadSlot(expr.slot);
+            code.checkcast("lox/Cell");
+            code.invokestatic(RUNTIME, "assignCell", "(Ljava/lang/Object;Llox/Cell;)Ljava/lang/Object;");
+        }
+        else if(expr.slot != -1)
+        {
+            code.dup();
+            storeSlot(expr.slot);
+        }
+        else
+        {
+            code.aload(UPVALUES);
+            code.iconst(expr.upvalue);
+            code.invokestatic(RUNTIME, "assignUpvalue", "(Ljava/lang/Object;[Llox/Cell;I)Ljava/lang/Object;");
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr)
+    {
+        if(expr.numberOperands)
+        {
+            numberBinary(expr);
+            return null;
+        }
+        switch(expr.operator.type)
+        {
+            case PLUS: binary("add", expr.left, expr.right, expr.operator); break;
+            case MINUS: binary("subtract", expr.left, expr.right, expr.operator); break;
+            case STAR: binary("multiply", expr.left, expr.right, expr.operator); break;
+            case SLASH: binary("divide", expr.left, expr.right, expr.operator); break;
+            case GREATER: binary("greater", expr.left, expr.right, expr.operator); break;
+            case GREATER_EQUAL: binary("greaterEqual", expr.left, expr.right, expr.operator); break;
+            case LESS: binary("less", expr.left, expr.right, expr.operator); break;
+            case LESS_EQUAL: binary("lessEqual", expr.left, expr.right, expr.operator); break;
+            case EQUAL_EQUAL:
+                compile(expr.left);
+                compile(expr.right);
+                code.invokestatic(RUNTIME, "equal", "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;");
+                break;
+            case BANG_EQUAL:
+                compile(expr.left);
+                compile(expr.right);
+                code.invokestatic(RUNTIME, "notEqual", "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;");
+                break;
+            default:
+                throw new Unsupported("unknown operator " + expr.operator.lexeme);
+        }
+        return null;
+    }
+
+    private void numberBinary(Expr.Binary expr) //both operands are proven numbers, only the result gets boxed
+    {
+        String helper;
+        switch(expr.operator.type)
+        {
+            case GREATER: helper = "greater"; break;
+            case GREATER_EQUAL: helper = "greaterEqual"; break;
+            case LESS: helper = "less"; break;
+            case LESS_EQUAL: helper = "lessEqual"; break;
+            case EQUAL_EQUAL: helper = "equal"; break;
+            case BANG_EQUAL: helper = "notEqual"; break;
+            default:
+                compileDouble(expr);
+                box();
+                return;
+        }
+        compileDouble(expr.left);
+        compileDouble(expr.right);
+        code.invokestatic(RUNTIME, helper, "(DD)Ljava/lang/Object;");
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr)
+    {
+        compile(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr)
+    {
+        if(expr.value == null) code.aconstNull();
+        else if(expr.value instanceof Boolean) code.getstatic("java/lang/Boolean", (boolean)expr.value ? "TRUE" : "FALSE", "Ljava/lang/Boolean;");
+        else if(expr.value instanceof String) code.ldcString((String)expr.value);
+        else constant(expr.value, null); //numbers stay boxed in the constant array so reading one never allocates
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr)
+    {
+        ClassFile.Label end = new ClassFile.Label();
+        compile(expr.left);
+        code.dup();
+        code.invokestatic("lox/Interpreter", "isTruthy", "(Ljava/lang/Object;)Z");
+        if(expr.operator.type == TokenType.OR) code.ifne(end);
+        else code.ifeq(end);
+        code.pop();
+        compile(expr.right);
+        code.mark(end);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr)
+    {
+        if(expr.number)
+        {
+            compileDouble(expr);
+            box();
+            return null;
+        }
+        compile(expr.right);
+        if(expr.operator.type == TokenType.MINUS) code.invokestatic(RUNTIME, "negate", "(Ljava/lang/Object;)Ljava/lang/Object;");
+        else code.invokestatic(RUNTIME, "not", "(Ljava/lang/Object;)Ljava/lang/Object;");
+        return null;
+    }
+
+    @Override
+    public Void visitTernaryExpr(Expr.Ternary expr)
+    {
+        ClassFile.Label falseBranch = new ClassFile.Label();
+        ClassFile.Label end = new ClassFile.Label();
+        condition(expr.Condition, falseBranch);
+        compile(expr.TrueBranch);
+        code.goTo(end);
+        code.stack--; //only one of the two branches leaves its value on the stack
+        code.mark(falseBranch);
+        compile(expr.FalseBranch);
+        code.mark(end);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr)
+    {
+        if(expr.slot == -1 && expr.upvalue == -1)
+        {
+            constant(expr.global, "lox/Cell");
+            token(expr.name);
+            code.invokestatic(ENVIRONMENT, "get", "(Llox/Cell;Llox/Token;)Ljava/lang/Object;");
+        }
+        else if(expr.number)
+        {
+            loadNumber(expr.slot);
+            box();
+        }
+        else
+        {
+            loadLocal(expr.slot, expr.cell, expr.upvalue);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitInlineExpr(Expr.Inline expr)
+    {
+        ClassFile.Label call = new ClassFile.Label();
+        ClassFile.Label end = new ClassFile.Label();
+        constant(expr.global, "lox/Cell");
+        code.getfield("lox/Cell", "value", "Ljava/lang/Object;");
+        constant(expr.function, "lox/Stmt$Function");
+        code.invokestatic("lox/LoxFunction", "declaredBy", "(Ljava/lang/Object;Llox/Stmt$Function;)Z");
+        code.ifeq(call);
+        List<Expr> arguments = expr.call.arguments;
+        for(int i = 0; i < arguments.size(); i ++)
+        {
+            compile(arguments.get(i));
+            storeSlot(expr.slot + i);
+        }
+        compile(expr.body);
+        code.goTo(end);
+        code.stack--; //like a ternary, only one of the two paths leaves its value on the stack
+        code.mark(call);
+        compile(expr.call);
+        code.mark(end);
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr)
+    {
+        loadLocal(expr.slot, expr.cell, expr.upvalue);
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Expr.Super expr)
+    {
+        loadLocal(-1, false, expr.upvalue);
+        compile(expr.self);
+        token(expr.method);
+        code.invokestatic(RUNTIME, "superGet", "(Ljava/lang/Object;Ljava/lang/Object;Llox/Token;)Ljava/lang/Object;");
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr)
+    {
+        if(expr.calee instanceof Expr.Get) //obj.m(...) : obj stays on the stack under the unbound method and is handed to it by JitRuntime.invoke
+        {
+            Expr.Get get = (Expr.Get)expr.calee;
+            compile(get.object);
+            code.dup();
+            token(get.name);
+            constant(get.cache, "lox/InlineCache");
+            code.invokestatic(RUNTIME, "getForInvoke", "(Ljava/lang/Object;Llox/Token;Llox/InlineCache;)Ljava/lang/Object;");
+        }
+        else if(expr.calee instanceof Expr.Super)
+        {
+            Expr.Super superExpr = (Expr.Super)expr.calee;
+            compile(superExpr.self);
+            loadLocal(-1, false, superExpr.upvalue);
+            token(superExpr.method);
+            code.invokestatic(RUNTIME, "superMethod", "(Ljava/lang/Object;Llox/Token;)Llox/LoxFunction;");
+        }
+        else if(expr.target != null) //bound by the Resolver, JitRuntime.callBound skips the checks once the guard (if any) holds
+        {
+            compile(expr.calee);
+            if(expr.guarded) constant(expr.target, "lox/Stmt$Function");
+            else code.aconstNull();
+            arguments(expr.arguments);
+            code.aload(INTERPRETER);
+            token(expr.paren);
+            code.invokestatic(RUNTIME, "callBound", "(Ljava/lang/Object;Llox/Stmt$Function;" + CALL_TAIL);
+            return null;
+        }
+        else
+        {
+            compile(expr.calee);
+            arguments(expr.arguments);
+            code.aload(INTERPRETER);
+            token(expr.paren);
+            code.invokestatic(RUNTIME, "call", "(Ljava/lang/Object;" + CALL_TAIL);
+            return null;
+        }
+        arguments(expr.arguments);
+        code.aload(INTERPRETER);
+        token(expr.paren);
+        code.invokestatic(RUNTIME, "invoke", "(Ljava/lang/Object;Ljava/lang/Object;" + CALL_TAIL);
+        return null;
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr)
+    {
+        compile(expr.object);
+        token(expr.name);
+        constant(expr.cache, "lox/InlineCache");
+        code.invokestatic(RUNTIME, "get", "(Ljava/lang/Object;Llox/Token;Llox/InlineCache;)Ljava/lang/Object;");
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr)
+    {
+        compile(expr.object);
+        token(expr.name);
+        code.invokestatic(RUNTIME, "checkInstance", "(Ljava/lang/Object;Llox/Token;)Ljava/lang/Object;");
+        compile(expr.value);
+        token(expr.name);
+        constant(expr.cache, "lox/InlineCache");
+        code.invokestatic(RUNTIME, "set", "(Ljava/lang/Object;Ljava/lang/Object;Llox/Token;Llox/InlineCache;)Ljava/lang/Object;");
+        return null;
+    }
+
+    @Override
+    public Void visitAnonymousFunctionExpr(Expr.AnonymousFunction expr)
+    {
+        throw new Unsupported("creates an anonymous function");
+    }
+
+    @Override
+    public Void visitArrayExpr(Expr.Array expr)
+    {
+        objectArray(expr.elements);
+        code.invokestatic(RUNTIME, "array", "([Ljava/lang/Object;)Ljava/lang/Object;");
+        return null;
+    }
+}
@@ -0,0 +1,8 @@
+package lox;
+
+//entry point of a hot loop the JIT compiled to JVM bytecode, implemented by the generated hidden class.
+interface JitLoop {
+    Object NORMAL = new Object(); //what run() returns when the loop ends, anything else is the value of a 'return' inside it
+
+    Object run(Interpreter interpreter, Cell[] upvalues, Environment frame); //picks up at the condition with the locals of frame, and writes them back when the loop ends
+}
@@ -0,0 +1,208 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+//static helpers the JIT compiled functions call into. Each one does exactly what the matching Interpreter visit method does,
+//so compiled and interpreted code can never disagree. They are small on purpose so HotSpot inlines them into the compiled function.
+
+final class JitRuntime {
+    private JitRuntime()
+    {
+    }
+
+    static Object add(Object l, Object r, Token operator)
+    {
+        if(Numbers.isNumber(l) && Numbers.isNumber(r)) return Numbers.add(l, r);
+        if(l instanceof String && r instanceof String) return (String)l + (String)r;
+        if(l instanceof String && Numbers.isNumber(r)) return (String)l + Numbers.concat(r);
+        if(Numbers.isNumber(l) && r instanceof String) return Numbers.concat(l) + (String)r;
+        throw new RuntimeError(operator, "Operands must be either numbers or strings");
+    }
+
+    static Object subtract(Object l, Object r, Token operator)
+    {
+        Interpreter.checkNumberOperand(operator, r);
+        return Numbers.subtract(l, r);
+    }
+
+    static Object multiply(Object l, Object r, Token operator)
+    {
+        Interpreter.checkNumberOperands(operator, l, r);
+        return Numbers.multiply(l, r);
+    }
+
+    static Object divide(Object l, Object r, Token operator)
+    {
+        Interpreter.checkNumberOperands(operator, l, r);
+        return Numbers.divide(l, r, operator);
+    }
+
+    static Object greater(Object l, Object r, Token operator)
+    {
+        Interpreter.checkNumberOperands(operator, l, r);
+        return Numbers.greater(l, r);
+    }
+
+    static Object greaterEqual(Object l, Object r, Token operator)
+    {
+        Interpreter.checkNumberOperands(operator, l, r);
+        return Numbers.greaterEqual(l, r);
+    }
+
+    static Object less(Object l, Object r, Token operator)
+    {
+        Interpreter.checkNumberOperands(operator, l, r);
+        return Numbers.less(l, r);
+    }
+
+    static Object lessEqual(Object l, Object r, Token operator)
+    {
+        Interpreter.checkNumberOperands(operator, l, r);
+        return Numbers.lessEqual(l, r);
+    }
+
+    //the same operators on operands TypeInference proved numeric, they live unboxed in double locals like in Interpreter.evaluateDouble()
+
+    static double divide(double l, double r, Token operator)
+    {
+        if(r == 0) throw new RuntimeError(operator, "Division by Zero is not permitted");
+        return l / r;
+    }
+
+    static Object greater(double l, double r)
+    {
+        return l > r;
+    }
+
+    static Object greaterEqual(double l, double r)
+    {
+        return l >= r;
+    }
+
+    static Object less(double l, double r)
+    {
+        return l < r;
+    }
+
+    static Object lessEqual(double l, double r)
+    {
+        return l <= r;
+    }
+
+    static Object equal(double l, double r) //compares bits like Numbers.equal()
+    {
+        return Double.doubleToLongBits(l) == Double.doubleToLongBits(r);
+    }
+
+    static Object notEqual(double l, double r)
+    {
+        return Double.doubleToLongBits(l) != Double.doubleToLongBits(r);
+    }
+
+    static Object equal(Object l, Object r)
+    {
+        return Interpreter.isEqual(l, r);
+    }
+
+    static Object notEqual(Object l, Object r)
+    {
+        return !Interpreter.isEqual(l, r);
+    }
+
+    static Object negate(Object right)
+    {
+        return Numbers.negate(right);
+    }
+
+    static Object not(Object right) //'!' gives back the truthiness of its operand, same as the Interpreter
+    {
+        return Interpreter.isTruthy(right);
+    }
+
+    static Object assignCell(Object value, Cell cell) //a captured local of the frame a compiled loop runs in
+    {
+        cell.value = value;
+        return value;
+    }
+
+    static Object assignUpvalue(Object value, Cell[] upvalues, int index)
+    {
+        upvalues[index].value = value;
+        return value;
+    }
+
+    static Object assignGlobal(Object value, Cell global, Token name)
+    {
+        Environment.assign(global, name, value);
+        return value;
+    }
+
+    static Object call(Object callee, int count, Object a0, Object a1, Object a2, Object[] rest, Interpreter interpreter, Token paren)
+    {
+        return Interpreter.call(interpreter, callee, null, count, a0, a1, a2, rest, paren);
+    }
+
+    static Object callBound(Object callee, Stmt.Function guard, int count, Object a0, Object a1, Object a2, Object[] rest, Interpreter interpreter, Token paren) //call() the Resolver bound, see Interpreter.callBound()
+    {
+        if(guard != null && !LoxFunction.declaredBy(callee, guard)) return Interpreter.call(interpreter, callee, null, count, a0, a1, a2, rest, paren);
+        return Interpreter.callBound(interpreter, callee, a0, a1, a2, rest);
+    }
+
+    static Object invoke(Object receiver, Object callee, int count, Object a0, Object a1, Object a2, Object[] rest, Interpreter interpreter, Token paren) //call() for obj.m(...) and super.m(...)
+    {
+        return Interpreter.call(interpreter, callee, (LoxInstance)receiver, count, a0, a1, a2, rest, paren);
+    }
+
+    static Object get(Object object, Token name, InlineCache cache)
+    {
+        if(object instanceof LoxInstance) return cache.get((LoxInstance)object, name);
+        throw new RuntimeError(name, "Only instances have properties.");
+    }
+
+    static Object getForInvoke(Object object, Token name, InlineCache cache)
+    {
+        if(object instanceof LoxInstance) return cache.getForInvoke((LoxInstance)object, name);
+        throw new RuntimeError(name, "Only instances have properties.");
+    }
+
+    static Object checkInstance(Object object, Token name) //Set checks the object before it evaluates the value
+    {
+        if(!(object instanceof LoxInstance)) throw new RuntimeError(name, "Only instances have fields.");
+        return object;
+    }
+
+    static Object set(Object object, Object value, Token name, InlineCache cache)
+    {
+        cache.set((LoxInstance)object, name, value);
+        return value;
+    }
+
+    static Object superGet(Object superclass, Object object, Token method)
+    {
+        LoxFunction found = superMethod(superclass, method);
+        if(found.isUnbound()) return found.bind((LoxInstance)object);
+        return found;
+    }
+
+    static LoxFunction superMethod(Object superclass, Token method)
+    {
+        LoxFunction found = ((LoxClass)superclass).findMethod(method.lexeme);
+        if(found != null) return found;
+
+        LoxFunction staticmethod = ((LoxClass)superclass).get(method);
+        if(staticmethod != null) return staticmethod;
+
+        throw new RuntimeError(method, "Undefined property " + method.lexeme + " .");
+    }
+
+    static Object array(Object[] elements)
+    {
+        return new LoxArray(new ArrayList<>(Arrays.asList(elements)));
+    }
+
+    static void print(Object value)
+    {
+        System.out.println(Interpreter.stringify(value));
+    }
+}
@@ -0,0 +1,125 @@
+package lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+//jloxc, the ahead of time compiler : compiles a script to VM bytecode once and packs it with the runtime classes into a runnable jar.
+//  java -cp bin lox.Jloxc script.lox [out.jar]
+//  java -jar out.jar
+public class Jloxc {
+  //the classes AotLauncher and the VM load, nested classes included. The front end, the tree-walker and the JIT stay out of the jar,
+  //check any change here with java -verbose:class -jar out.jar
+  private static final Set<String> RUNTIME = new HashSet<>(Arrays.asList(
+      "AotLauncher", "BytecodeImage", "Chunk", "VM", "VmFunction", "VmClosure", "VmUpvalue", "VmClass", "VmInstance", "VmBoundMethod",
+      "LoxCallable", "LoxInstance", "LoxArray", "Shape", "Numbers", "Token", "TokenType", "RuntimeError", "NativeError", "Lox"));
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1 || args.length > 2) {
+      System.out.println("Usage: jloxc script.lox [output.jar]");
+      System.exit(64);
+    }
+    String script = args[0];
+    String output = args.length == 2 ? args[1] : script.replaceFirst("\\.lox$", "") + ".jar";
+
+    byte[] bytes = Files.readAllBytes(Paths.get(script));
+    String source = new String(bytes, Charset.defaultCharset());
+
+    TokenBuffer tokens = new Scanner(source).scanTokens();
+    if (Lox.hadError) System.exit(65);
+    List<Stmt> statements = new Parser(tokens, false).parse();
+    if (Lox.hadError) System.exit(65);
+    new Resolver(new Environment()).resolve(statements); //the VM has its own globals, these Cells are never used
+    if (Lox.hadError) System.exit(65);
+    new Optimizer().optimize(statements);
+
+    VM vm = new VM();
+    VmFunction program = new BytecodeCompiler(vm).compile(statements, false);
+    if (Lox.hadError) System.exit(65);
+
+    ByteArrayOutputStream image = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(image)) {
+      BytecodeImage.write(out, vm, program);
+    }
+
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, AotLauncher.class.getName());
+
+    try (JarOutputStream jar = new JarOutputStream(new FileOutputStream(output), manifest)) {
+      jar.putNextEntry(new JarEntry(AotLauncher.IMAGE));
+      jar.write(image.toByteArray());
+      jar.closeEntry();
+
+      for (String name : runtimeClasses()) {
+        jar.putNextEntry(new JarEntry(name));
+        try (InputStream in = Jloxc.class.getClassLoader().getResourceAsStream(name)) {
+          copy(in, jar);
+        }
+        jar.closeEntry();
+      }
+    }
+    System.out.println("Wrote " + output);
+  }
+
+  //the RUNTIME classes of the lox package, found next to this one (a directory like bin/ or a jar).
+  private static List<String> runtimeClasses() throws IOException {
+    List<String> names = new ArrayList<>();
+    File location;
+    try {
+      location = new File(Jloxc.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+    } catch (URISyntaxException e) {
+      throw new IOException(e);
+    }
+
+    if (location.isDirectory()) {
+      File[] files = new File(location, "lox").listFiles();
+      if (files != null) {
+        for (File file : files) {
+          if (file.getName().endsWith(".class") && isRuntime(file.getName())) names.add("lox/" + file.getName());
+        }
+      }
+    } else {
+      try (JarFile jar = new JarFile(location)) {
+        Enumeration<JarEntry> entries = jar.entries();
+        while (entries.hasMoreElements()) {
+          String name = entries.nextElement().getName();
+          if (name.startsWith("lox/") && name.endsWith(".class") && isRuntime(name.substring(4))) names.add(name);
+        }
+      }
+    }
+    return names;
+  }
+
+  private static boolean isRuntime(String fileName) { //VM.class and VM$CallFrame.class both belong to VM
+    String name = fileName.substring(0, fileName.length() - ".class".length());
+    int nested = name.indexOf('$');
+    return RUNTIME.contains(nested == -1 ? name : name.substring(0, nested));
+  }
+
+  private static void copy(InputStream in, JarOutputStream out) throws IOException {
+    byte[] buffer = new byte[8192];
+    int n;
+    while ((n = in.read(buffer)) != -1) {
+      out.write(buffer, 0, n);
+    }
+  }
+}
@@ -11,20 +11,43 @@ import java.util.List;
 
 
 public class Lox {
-  private static final Interpreter interpreter = new Interpreter();
+  private static Interpreter interpreter; //created in main(), so the jars jloxc builds can use Lox's error reporting without loading it
+  private static VM vm = null; //set when running on the bytecode VM instead of the tree-walking interpreter
   static boolean hadError = false;
   static boolean hadRuntimeError = false;
   public static void main(String[] args) throws IOException {
-    if (args.length > 1) {
-      System.out.println("Usage: jlox [script]");
-      System.exit(64); 
-    } else if (args.length == 1) {
-      runFile(args[0]);
+    interpreter = new Interpreter();
+    String script = null;
+    for (String arg : args) {
+      if (arg.equals("--vm")) {
+        vm = new VM();
+      } else if (arg.equals("--nodes")) {
+        interpreter.nodeMode = true;
+      } else if (arg.equals("--no-jit")) {
+        Jit.enabled = false;
+      } else if (arg.equals("--jit-log")) {
+        Jit.log = true;
+      } else if (arg.equals("--inline-log")) {
+        Optimizer.log = true;
+      } else if (script == null && !arg.startsWith("--")) {
+        script = arg;
+      } else {
+        usage();
+      }
+    }
+
+    if (script != null) {
+      runFile(script);
     } else {
       runPrompt();
     }
   }
 
+  private static void usage() {
+    System.out.println("Usage: jlox [--vm | --nodes] [--no-jit] [--jit-log] [--inline-log] [script]");
+    System.exit(64);
+  }
+
   private static void runFile(String path) throws IOException {
     byte[] bytes = Files.readAllBytes(Paths.get(path));
     run(new String(bytes, Charset.defaultCharset()), false);
@@ -51,7 +74,7 @@ public class Lox {
 
   private static void run(String source, boolean repl_mode) {
     Scanner scanner = new Scanner(source);
-    List<Token> tokens = scanner.scanTokens();
+    TokenBuffer tokens = scanner.scanTokens();
 
     if (hadError) return;
     
@@ -61,12 +84,17 @@ public class Lox {
     // Stop if there was a syntax error.
     if (hadError) return;
 
-    Resolver resolver = new Resolver(interpreter);
+    Resolver resolver = new Resolver(interpreter.globals);
     resolver.resolve(statements);
 
     if(hadError) return;
+    Optimizer optimizer = new Optimizer();
+    optimizer.optimize(statements);
+    if (vm == null) optimizer.inline(statements); //the VM would only make the calls anyway
+    new TypeInference().infer(statements);
     
-    interpreter.interpret(statements, repl_mode);
+    if (vm != null) vm.interpret(statements, repl_mode);
+    else interpreter.interpret(statements, repl_mode);
   }
 
   static void error(int line, String message)
@@ -3,35 +3,84 @@ package lox;
 import java.util.List;
 
 public class LoxAnonymousFunction implements LoxCallable{
-    private final Expr.AnonymousFunction declaration;
-    private final Environment closure;
+    final Expr.AnonymousFunction declaration;
+    final Cell[] upvalues;
 
-    LoxAnonymousFunction(Expr.AnonymousFunction decl, Environment closure)
+    LoxAnonymousFunction(Expr.AnonymousFunction decl, Cell[] upvalues)
     {
         this.declaration = decl;
-        this.closure = closure;
+        this.upvalues = upvalues;
     }
 
     @Override
     public Object call(Interpreter interpreter, List<Object> Arguments)
     {
-        Environment environment = new Environment(closure);
+        return invoke(interpreter, LoxCallable.argument(Arguments, 0), LoxCallable.argument(Arguments, 1), LoxCallable.argument(Arguments, 2), LoxCallable.rest(Arguments));
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter)
+    {
+        return invoke(interpreter, null, null, null, null);
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a0)
+    {
+        return invoke(interpreter, a0, null, null, null);
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a0, Object a1)
+    {
+        return invoke(interpreter, a0, a1, null, null);
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a0, Object a1, Object a2)
+    {
+        return invoke(interpreter, a0, a1, a2, null);
+    }
 
-        for(int i = 0; i < declaration.parameters.size() ; i ++)
+    Object invoke(Interpreter interpreter, Object a0, Object a1, Object a2, Object[] rest) //same split arguments as LoxFunction.invoke()
+    {
+        Environment environment = interpreter.pushFrame(upvalues, declaration.slotCount);
+        try
         {
-            environment.define(declaration.parameters.get(i).lexeme, Arguments.get(i));
+            return run(interpreter, frame(environment, a0, a1, a2, rest));
         }
-        try
+        finally
         {
-            interpreter.executeBlock(declaration.body, environment);
+            interpreter.popFrame(declaration.slotCount);
         }
-        catch(Return ret)
+    }
+
+    Object run(Interpreter interpreter, Environment environment)
+    {
+        if(interpreter.executeBlock(declaration.body, environment) == Interpreter.Completion.RETURN)
         {
-            return ret.value;
+            return interpreter.returnValue();
         }
         return null;
     }
 
+    Environment frame(Environment environment, Object a0, Object a1, Object a2, Object[] rest)
+    {
+        int count = declaration.parameters.size();
+        if(count > 0) environment.define(0, a0);
+        if(count > 1) environment.define(1, a1);
+        if(count > 2) environment.define(2, a2);
+        for(int i = 3; i < count; i ++)
+        {
+            environment.define(i, rest[i - 3]);
+        }
+        for(int slot : declaration.cellParams)
+        {
+            environment.define(slot, new Cell(environment.slots[slot]));
+        }
+        return environment;
+    }
+
     @Override
     public int arity()
     {
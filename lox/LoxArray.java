@@ -25,7 +25,13 @@ public class LoxArray extends LoxInstance{
                 @Override
                 public Object call(Interpreter interpreter, List<Object> arguments)
                 {
-                    elements.add(arguments.get(0));
+                    return call1(interpreter, arguments.get(0));
+                }
+
+                @Override
+                public Object call1(Interpreter interpreter, Object value)
+                {
+                    elements.add(value);
                     return null;
                 }
     
@@ -49,10 +55,13 @@ public class LoxArray extends LoxInstance{
             @Override
             public Object call(Interpreter interpreter, List<Object> arguments)
             {
-                if(!(arguments.get(0) instanceof Double) || ((Double) arguments.get(0)) % 1 != 0) throw new NativeError("Indexing is integer-based.");
-                int index = ((Double) arguments.get(0)).intValue();
-                if (index < 0 || index >= elements.size()) throw new NativeError("Index out of bounds.");
-                return elements.get(index);
+                return call1(interpreter, arguments.get(0));
+            }
+
+            @Override
+            public Object call1(Interpreter interpreter, Object position)
+            {
+                return elements.get(index(position));
             }
 
             @Override
@@ -75,10 +84,13 @@ public class LoxArray extends LoxInstance{
             @Override
             public Object call(Interpreter interpreter, List<Object> arguments)
             {
-                if(!(arguments.get(0) instanceof Double) || ((Double) arguments.get(0)) % 1 != 0) throw new NativeError("Indexing is integer-based.");
-                int index = ((Double) arguments.get(0)).intValue();
-                if (index < 0 || index >= elements.size()) throw new NativeError("Index out of bounds.");
-                return elements.set(index, arguments.get(1));
+                return call2(interpreter, arguments.get(0), arguments.get(1));
+            }
+
+            @Override
+            public Object call2(Interpreter interpreter, Object position, Object value)
+            {
+                return elements.set(index(position), value);
             }
 
             @Override
@@ -101,10 +113,13 @@ public class LoxArray extends LoxInstance{
             @Override
             public Object call(Interpreter interpreter, List<Object> arguments)
             {
-                if(!(arguments.get(0) instanceof Double) || ((Double) arguments.get(0)) % 1 != 0) throw new NativeError("Indexing is integer-based.");
-                int index = ((Double) arguments.get(0)).intValue();
-                if (index < 0 || index >= elements.size()) throw new NativeError("Index out of bounds.");
-                return elements.remove(index);
+                return call1(interpreter, arguments.get(0));
+            }
+
+            @Override
+            public Object call1(Interpreter interpreter, Object position)
+            {
+                return elements.remove(index(position));
             }
 
             @Override
@@ -117,9 +132,29 @@ public class LoxArray extends LoxInstance{
         methods.put("remove", remove_fn);
     }
 
+    private int index(Object position) //checks an index argument of get, update and remove
+    {
+        if(position instanceof Long) //integers need no fractional check
+        {
+            long index = (long)position;
+            if (index < 0 || index >= elements.size()) throw new NativeError("Index out of bounds.");
+            return (int)index;
+        }
+        if(!(position instanceof Double) || ((Double) position) % 1 != 0) throw new NativeError("Indexing is integer-based.");
+        int index = ((Double) position).intValue();
+        if (index < 0 || index >= elements.size()) throw new NativeError("Index out of bounds.");
+        return index;
+    }
+
+    LoxCallable findMethod(String name) //null if there is no such array method
+    {
+        return methods.get(name);
+    }
+
     LoxCallable get(Token name)
     {
-        if(methods.containsKey(name.lexeme)) return methods.get(name.lexeme);
+        LoxCallable method = findMethod(name.lexeme);
+        if(method != null) return method;
 
         throw new RuntimeError(name, "'" + name.lexeme + "' " + "array method does not exist.");
     }
@@ -132,7 +167,8 @@ public class LoxArray extends LoxInstance{
         ret.append("[");
         for(int i = 0; i < elements.size(); i++)
         {
-            ret.append(Interpreter.stringify(elements.get(i)));
+            Object element = elements.get(i); //Interpreter.stringify(), without loading the Interpreter into jloxc's jars
+            ret.append(element == null ? "nil" : Numbers.isNumber(element) ? Numbers.stringify(element) : element.toString());
             if (i < elements.size() - 1) {
                 ret.append(',');
             }
@@ -1,7 +1,55 @@
 package lox;
+import java.util.ArrayList;
 import java.util.List;
 
 interface LoxCallable {
     int arity();
-    Object call(Interpreter interpreter, List<Object> arguments);   
+    Object call(Interpreter interpreter, List<Object> arguments);
+
+    //fixed arity entry points, so a call with up to three arguments never has to build a List. The defaults just fall back to call(),
+    //functions, classes and the natives override them.
+    default Object call0(Interpreter interpreter)
+    {
+        return call(interpreter, arguments(0, null, null, null, null));
+    }
+
+    default Object call1(Interpreter interpreter, Object a0)
+    {
+        return call(interpreter, arguments(1, a0, null, null, null));
+    }
+
+    default Object call2(Interpreter interpreter, Object a0, Object a1)
+    {
+        return call(interpreter, arguments(2, a0, a1, null, null));
+    }
+
+    default Object call3(Interpreter interpreter, Object a0, Object a1, Object a2)
+    {
+        return call(interpreter, arguments(3, a0, a1, a2, null));
+    }
+
+    //call sites keep the first three arguments in a0..a2 and only put the ones after that in rest (null when there are none).
+    static List<Object> arguments(int count, Object a0, Object a1, Object a2, Object[] rest)
+    {
+        List<Object> arguments = new ArrayList<>(count);
+        if(count > 0) arguments.add(a0);
+        if(count > 1) arguments.add(a1);
+        if(count > 2) arguments.add(a2);
+        for(int i = 3; i < count; i ++)
+        {
+            arguments.add(rest[i - 3]);
+        }
+        return arguments;
+    }
+
+    static Object argument(List<Object> arguments, int i) //the other way round, for callables that take a List and pass it on in the split form
+    {
+        return i < arguments.size() ? arguments.get(i) : null;
+    }
+
+    static Object[] rest(List<Object> arguments)
+    {
+        if(arguments.size() <= 3) return null;
+        return arguments.subList(3, arguments.size()).toArray();
+    }
 }
@@ -6,43 +6,74 @@ import java.util.Map;
 
 class LoxClass extends LoxInstance implements LoxCallable{
   final String name;
-  final Map<String, LoxFunction> methods;
-  final Map<String, LoxFunction> staticMethods;
+  final Map<String, LoxFunction> methods; //own and inherited methods, flattened once when the class is defined so a lookup is one probe however deep the hierarchy is
+  final Map<String, LoxFunction> staticMethods; //only the class's own, statics are not inherited
   final LoxClass superclass;
+  final LoxFunction initializer; //init, own or inherited, null if there is none
+  final Shape rootShape = new Shape(); //shape of a freshly constructed instance, every instance's fields grow from here
 
   LoxClass(String name, LoxClass superclass, Map<String, LoxFunction> methods, Map<String, LoxFunction> staticMethods) {
     super(null);
     this.name = name;
-    this.methods = methods;
     this.staticMethods = staticMethods;
     this.superclass = superclass;
+
+    Map<String, LoxFunction> table = new HashMap<>(); //the superclass's table is already flat, so copying it in is enough
+    if(superclass != null) table.putAll(superclass.methods);
+    table.putAll(methods); //overrides replace what was inherited
+    this.methods = table;
+    this.initializer = table.get("init");
   }
 
   LoxFunction findMethod(String name)
   {
-        if(methods.containsKey(name)) return methods.get(name);
-        if(superclass != null)
-        {
-            return superclass.findMethod(name);
-        }
-        return null;
+        return methods.get(name);
   }
 
   LoxFunction get(Token name) //to handle static method calls
   {
-      if(staticMethods.containsKey(name.lexeme)) return staticMethods.get(name.lexeme);
+      LoxFunction method = staticMethods.get(name.lexeme);
+      if(method != null) return method;
 
       throw new RuntimeError(name, "Undefined propery'" + name.lexeme + "' .");
   }
 
   @Override
   public Object call(Interpreter interpreter, List<Object> arguments)
+  {
+     return construct(interpreter, LoxCallable.argument(arguments, 0), LoxCallable.argument(arguments, 1), LoxCallable.argument(arguments, 2), LoxCallable.rest(arguments));
+  }
+
+  @Override
+  public Object call0(Interpreter interpreter)
+  {
+     return construct(interpreter, null, null, null, null);
+  }
+
+  @Override
+  public Object call1(Interpreter interpreter, Object a0)
+  {
+     return construct(interpreter, a0, null, null, null);
+  }
+
+  @Override
+  public Object call2(Interpreter interpreter, Object a0, Object a1)
+  {
+     return construct(interpreter, a0, a1, null, null);
+  }
+
+  @Override
+  public Object call3(Interpreter interpreter, Object a0, Object a1, Object a2)
+  {
+     return construct(interpreter, a0, a1, a2, null);
+  }
+
+  Object construct(Interpreter interpreter, Object a0, Object a1, Object a2, Object[] rest)
   {
      LoxInstance instance = new LoxInstance(this);
-     LoxFunction intializer = findMethod("init");
-     if(intializer != null)
+     if(initializer != null)
      {
-        intializer.bind(instance).call(interpreter, arguments);
+        initializer.invoke(interpreter, instance, a0, a1, a2, rest);
      }
      return instance;
   }
@@ -50,8 +81,7 @@ class LoxClass extends LoxInstance implements LoxCallable{
   @Override
   public int arity()
   {
-    LoxFunction intializer = findMethod("init");
-    if(intializer != null) return intializer.arity();
+    if(initializer != null) return initializer.arity();
     return 0;
   }
   @Override
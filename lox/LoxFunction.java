@@ -2,40 +2,113 @@ package lox;
 import java.util.List;
 
 public class LoxFunction implements LoxCallable {
-    private final Stmt.Function declaration;
-    private final Environment closure;
+    final Stmt.Function declaration;
+    final Cell[] upvalues; //the variables it captured from enclosing functions, see Resolver
+    final LoxInstance receiver; //the instance a bound method was taken from, null for functions and for methods still sitting in their class
 
-    LoxFunction(Stmt.Function decl, Environment closure)
+    LoxFunction(Stmt.Function decl, Cell[] upvalues)
+    {
+        this(decl, upvalues, null);
+    }
+
+    LoxFunction(Stmt.Function decl, Cell[] upvalues, LoxInstance receiver)
     {
         this.declaration = decl;
-        this.closure = closure;
+        this.upvalues = upvalues;
+        this.receiver = receiver;
     }
 
     @Override
     public Object call(Interpreter interpreter, List<Object> Arguments)
     {
-        Environment environment = new Environment(closure);
+        return invoke(interpreter, receiver, LoxCallable.argument(Arguments, 0), LoxCallable.argument(Arguments, 1), LoxCallable.argument(Arguments, 2), LoxCallable.rest(Arguments));
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter)
+    {
+        return invoke(interpreter, receiver, null, null, null, null);
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a0)
+    {
+        return invoke(interpreter, receiver, a0, null, null, null);
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a0, Object a1)
+    {
+        return invoke(interpreter, receiver, a0, a1, null, null);
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a0, Object a1, Object a2)
+    {
+        return invoke(interpreter, receiver, a0, a1, a2, null);
+    }
 
-        for(int i = 0; i < declaration.parameters.size() ; i ++)
+    //calls the function with 'self' as 'this'. obj.m(...) comes straight here with obj, so no bound method is ever made for it.
+    //The arguments come split like in LoxCallable.arguments(), so they go straight into the frame.
+    //The body runs right here instead of through executeBlock(), every JVM frame a Lox call keeps alive comes off the recursion depth a script can reach.
+    Object invoke(Interpreter interpreter, LoxInstance self, Object a0, Object a1, Object a2, Object[] rest)
+    {
+        JitCode compiled = Jit.entry(declaration); //hot functions run as JVM bytecode instead
+        if(compiled != null) return compiled.invoke(interpreter, upvalues, self, a0, a1, a2, rest);
+
+        Environment environment = interpreter.pushFrame(upvalues, declaration.slotCount); //closures made inside only keep Cells, so the frame is reused
+        frame(environment, self, a0, a1, a2, rest);
+        Environment previous = interpreter.environment;
+        boolean repl = interpreter.Mode_REPL; //expression statements in a body are never echoed
+        interpreter.environment = environment;
+        interpreter.Mode_REPL = false;
+        try
         {
-            environment.define(declaration.parameters.get(i).lexeme, Arguments.get(i));
+            for(Stmt statement : declaration.body)
+            {
+                if(statement.accept(interpreter) == Interpreter.Completion.RETURN) return interpreter.returnValue();
+            }
+            return null;
         }
-        try
+        finally
+        {
+            interpreter.environment = previous;
+            interpreter.Mode_REPL = repl;
+            interpreter.popFrame(declaration.slotCount);
+        }
+    }
+
+    void frame(Environment environment, LoxInstance self, Object a0, Object a1, Object a2, Object[] rest) //fills in the frame, it has returned before the body runs
+    {
+        int first = declaration.paramStart;
+        if(first == 1) environment.define(0, self); //a method's frame holds 'this' in slot 0
+        int count = declaration.parameters.size(); //parameters are declared next, so they take the following slots
+        if(count > 0) environment.define(first, a0);
+        if(count > 1) environment.define(first + 1, a1);
+        if(count > 2) environment.define(first + 2, a2);
+        for(int i = 3; i < count; i ++)
         {
-            interpreter.executeBlock(declaration.body, environment);
+            environment.define(first + i, rest[i - 3]);
         }
-        catch(Return ret)
-        {   
-            return ret.value;
+        for(int slot : declaration.cellParams) //a parameter some closure captures is boxed before the body runs
+        {
+            environment.define(slot, new Cell(environment.slots[slot]));
         }
-        return null;
     }
 
-    LoxFunction bind(LoxInstance instance)
+    LoxFunction bind(LoxInstance instance) //only needed when a method is taken as a value
+    {
+        return new LoxFunction(declaration, upvalues, instance);
+    }
+
+    static boolean declaredBy(Object value, Stmt.Function declaration) //the guard of an inlined call : does the global still hold that function
+    {
+        return value instanceof LoxFunction && ((LoxFunction)value).declaration == declaration;
+    }
+
+    boolean isUnbound() //a method handed out by InlineCache.getForInvoke() or a super lookup, the caller still has to supply the receiver
     {
-        Environment env = new Environment(closure);
-        env.define("this", instance);
-        return new LoxFunction(declaration, env);
+        return receiver == null && declaration.paramStart == 1;
     }
 
     @Override
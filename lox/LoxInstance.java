@@ -1,20 +1,24 @@
 package lox;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 public class LoxInstance {
-    private LoxClass klass; //eh a bit of quirky naming
-    private final Map<String, Object> fields = new HashMap<String, Object>();
+    private static final Object[] NO_FIELDS = new Object[0];
+
+    final LoxClass klass; //eh a bit of quirky naming
+    Shape shape; //where each field lives in values, shared with every instance of the class that has the same fields
+    Object[] values = NO_FIELDS;
     
     LoxInstance(LoxClass klass)
     {
         this.klass = klass;
+        this.shape = klass == null ? Shape.ROOT : klass.rootShape;
     }
 
     Object get(Token name)
     {
-        if(fields.containsKey(name.lexeme)) return fields.get(name.lexeme);
+        int slot = shape.indexOf(name.lexeme);
+        if(slot != -1) return values[slot];
 
         LoxFunction method = klass.findMethod(name.lexeme);
 
@@ -30,9 +34,20 @@ public class LoxInstance {
 
     void set(Token name, Object value)
     {
-        fields.put(name.lexeme, value);
+        int slot = shape.indexOf(name.lexeme);
+        if(slot == -1)
+        {
+            slot = addField(shape.with(name.lexeme));
+        }
+        values[slot] = value;
     }
 
+    int addField(Shape next) //moves the instance to the shape with one more field and returns that field's index
+    {
+        shape = next;
+        if(values.length < next.size) values = Arrays.copyOf(values, Math.max(4, values.length * 2));
+        return next.size - 1;
+    }
 
     @Override
     public String toString()
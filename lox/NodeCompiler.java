@@ -0,0 +1,306 @@
+package lox;
+
+import java.util.List;
+
+//turns the resolved AST into ExprNode/StmtNode trees for the Interpreter's node mode.
+//All the decisions the Interpreter makes on every visit (which operator, local or global, how deep, whether the REPL echoes) are made once here.
+
+class NodeCompiler implements Expr.Visitor<ExprNode>, Stmt.Visitor<StmtNode> {
+    private final Interpreter interpreter;
+    private boolean echo = false; //same rule as Interpreter.Mode_REPL : only top level expression statements are printed
+
+    NodeCompiler(Interpreter interpreter)
+    {
+        this.interpreter = interpreter;
+    }
+
+    StmtNode[] compile(List<Stmt> statements, boolean repl_mode)
+    {
+        echo = repl_mode;
+        return compileAll(statements);
+    }
+
+    private StmtNode[] compileAll(List<Stmt> statements)
+    {
+        StmtNode[] nodes = new StmtNode[statements.size()];
+        for(int i = 0; i < nodes.length; i ++)
+        {
+            nodes[i] = statements.get(i).accept(this);
+        }
+        return nodes;
+    }
+
+    private StmtNode[] compileBody(List<Stmt> statements) //blocks, loop and function bodies never echo
+    {
+        boolean prev = echo;
+        echo = false;
+        try
+        {
+            return compileAll(statements);
+        }
+        finally
+        {
+            echo = prev;
+        }
+    }
+
+    private ExprNode compile(Expr expr)
+    {
+        return expr.accept(this);
+    }
+
+    private ExprNode[] compileExprs(List<Expr> exprs)
+    {
+        ExprNode[] nodes = new ExprNode[exprs.size()];
+        for(int i = 0; i < nodes.length; i ++)
+        {
+            nodes[i] = compile(exprs.get(i));
+        }
+        return nodes;
+    }
+
+    private StmtNode.Function function(Stmt.Function stmt)
+    {
+        return new StmtNode.Function(stmt, compileBody(stmt.body));
+    }
+
+    private static ExprNode localGet(int slot, boolean cell, int upvalue)
+    {
+        if(slot == -1) return new ExprNode.UpvalueGet(upvalue);
+        if(cell) return new ExprNode.CellGet(slot);
+        return new ExprNode.LocalGet(slot);
+    }
+
+    //---------------------------------------------------------------- statements
+
+    @Override
+    public StmtNode visitBlockStmt(Stmt.Block stmt)
+    {
+        return new StmtNode.Block(compileBody(stmt.Statements), stmt.slotCount);
+    }
+
+    @Override
+    public StmtNode visitExpressionStmt(Stmt.Expression stmt)
+    {
+        if(echo) return new StmtNode.Echo(compile(stmt.expression));
+        return new StmtNode.Expression(compile(stmt.expression));
+    }
+
+    @Override
+    public StmtNode visitIfStmt(Stmt.If stmt)
+    {
+        StmtNode falseBranch = stmt.falseBranch == null ? null : stmt.falseBranch.accept(this);
+        return new StmtNode.If(compile(stmt.condition), stmt.trueBranch.accept(this), falseBranch);
+    }
+
+    @Override
+    public StmtNode visitPrintStmt(Stmt.Print stmt)
+    {
+        return new StmtNode.Print(compile(stmt.expression));
+    }
+
+    @Override
+    public StmtNode visitVarStmt(Stmt.Var stmt)
+    {
+        ExprNode value = stmt.intializer == null ? null : compile(stmt.intializer);
+        if(stmt.slot == -1) return new StmtNode.DefineGlobal(stmt.name.lexeme, value);
+        if(stmt.cell) return new StmtNode.DefineCell(stmt.slot, value);
+        return new StmtNode.DefineLocal(stmt.slot, value);
+    }
+
+    @Override
+    public StmtNode visitClassStmt(Stmt.Class stmt)
+    {
+        ExprNode superclass = stmt.superclass == null ? null : compile(stmt.superclass);
+
+        StmtNode.Function[] methods = new StmtNode.Function[stmt.methods.size()];
+        for(int i = 0; i < methods.length; i ++)
+        {
+            methods[i] = function(stmt.methods.get(i));
+        }
+        StmtNode.Function[] staticMethods = new StmtNode.Function[stmt.staticmethods.size()];
+        for(int i = 0; i < staticMethods.length; i ++)
+        {
+            staticMethods[i] = function(stmt.staticmethods.get(i));
+        }
+        return new StmtNode.Class(stmt, superclass, methods, staticMethods);
+    }
+
+    @Override
+    public StmtNode visitWhileStmt(Stmt.While stmt)
+    {
+        boolean prev = echo;
+        echo = false;
+        StmtNode body = stmt.body.accept(this);
+        echo = prev;
+        return new StmtNode.While(compile(stmt.condition), body);
+    }
+
+    @Override
+    public StmtNode visitForStmt(Stmt.For stmt)
+    {
+        boolean prev = echo;
+        echo = false;
+        StmtNode initializer = stmt.initializer == null ? null : stmt.initializer.accept(this);
+        StmtNode body = stmt.body.accept(this);
+        echo = prev;
+        ExprNode increment = stmt.increment == null ? null : compile(stmt.increment);
+        return new StmtNode.For(initializer, compile(stmt.condition), increment, body, stmt.slotCount);
+    }
+
+    @Override
+    public StmtNode visitBreakStmt(Stmt.Break stmt)
+    {
+        return new StmtNode.Break();
+    }
+
+    @Override
+    public StmtNode visitFunctionStmt(Stmt.Function stmt)
+    {
+        return function(stmt);
+    }
+
+    @Override
+    public StmtNode visitReturnStmt(Stmt.Return stmt)
+    {
+        return new StmtNode.Return(stmt.value == null ? null : compile(stmt.value));
+    }
+
+    //---------------------------------------------------------------- expressions
+
+    @Override
+    public ExprNode visitAssignExpr(Expr.Assign expr)
+    {
+        ExprNode value = compile(expr.value);
+        if(expr.upvalue != -1) return new ExprNode.UpvalueSet(expr.upvalue, value);
+        if(expr.slot == -1) return new ExprNode.GlobalSet(expr.global, expr.name, value);
+        if(expr.cell) return new ExprNode.CellSet(expr.slot, value);
+        return new ExprNode.LocalSet(expr.slot, value);
+    }
+
+    @Override
+    public ExprNode visitBinaryExpr(Expr.Binary expr)
+    {
+        ExprNode left = compile(expr.left);
+        ExprNode right = compile(expr.right);
+        Token op = expr.operator;
+
+        switch(op.type)
+        {
+            case PLUS: return new ExprNode.Add(left, right, op);
+            case MINUS: return new ExprNode.Subtract(left, right, op);
+            case STAR: return new ExprNode.Multiply(left, right, op);
+            case SLASH: return new ExprNode.Divide(left, right, op);
+            case GREATER: return new ExprNode.Greater(left, right, op);
+            case GREATER_EQUAL: return new ExprNode.GreaterEqual(left, right, op);
+            case LESS: return new ExprNode.Less(left, right, op);
+            case LESS_EQUAL: return new ExprNode.LessEqual(left, right, op);
+            case EQUAL_EQUAL: return new ExprNode.Equal(left, right);
+            case BANG_EQUAL: return new ExprNode.NotEqual(left, right);
+            default:
+                throw new IllegalStateException("Unexpected binary operator " + op.lexeme);
+        }
+    }
+
+    @Override
+    public ExprNode visitGroupingExpr(Expr.Grouping expr)
+    {
+        return compile(expr.expression);
+    }
+
+    @Override
+    public ExprNode visitLiteralExpr(Expr.Literal expr)
+    {
+        return new ExprNode.Constant(expr.value);
+    }
+
+    @Override
+    public ExprNode visitLogicalExpr(Expr.Logical expr)
+    {
+        if(expr.operator.type == TokenType.OR) return new ExprNode.Or(compile(expr.left), compile(expr.right));
+        return new ExprNode.And(compile(expr.left), compile(expr.right));
+    }
+
+    @Override
+    public ExprNode visitUnaryExpr(Expr.Unary expr)
+    {
+        ExprNode right = compile(expr.right);
+        if(expr.operator.type == TokenType.MINUS) return new ExprNode.Negate(right);
+        return new ExprNode.Not(right);
+    }
+
+    @Override
+    public ExprNode visitTernaryExpr(Expr.Ternary expr)
+    {
+        return new ExprNode.Ternary(compile(expr.Condition), compile(expr.TrueBranch), compile(expr.FalseBranch));
+    }
+
+    @Override
+    public ExprNode visitVariableExpr(Expr.Variable expr)
+    {
+        if(expr.slot == -1 && expr.upvalue == -1) return new ExprNode.GlobalGet(expr.global, expr.name);
+        return localGet(expr.slot, expr.cell, expr.upvalue);
+    }
+
+    @Override
+    public ExprNode visitThisExpr(Expr.This expr)
+    {
+        return localGet(expr.slot, expr.cell, expr.upvalue);
+    }
+
+    @Override
+    public ExprNode visitSuperExpr(Expr.Super expr)
+    {
+        return new ExprNode.Super(expr.upvalue, compile(expr.self), expr.method);
+    }
+
+    @Override
+    public ExprNode visitCallExpr(Expr.Call expr)
+    {
+        if(expr.calee instanceof Expr.Get)
+        {
+            Expr.Get get = (Expr.Get)expr.calee;
+            return new ExprNode.Invoke(interpreter, compile(get.object), get.name, compileExprs(expr.arguments), expr.paren);
+        }
+        if(expr.calee instanceof Expr.Super)
+        {
+            Expr.Super superExpr = (Expr.Super)expr.calee;
+            return new ExprNode.SuperInvoke(interpreter, superExpr.upvalue, compile(superExpr.self), superExpr.method, compileExprs(expr.arguments), expr.paren);
+        }
+        if(expr.target != null)
+        {
+            return new ExprNode.BoundCall(interpreter, compile(expr.calee), expr.guarded ? (Stmt.Function)expr.target : null, compileExprs(expr.arguments), expr.paren);
+        }
+        return new ExprNode.Call(interpreter, compile(expr.calee), compileExprs(expr.arguments), expr.paren);
+    }
+
+    @Override
+    public ExprNode visitInlineExpr(Expr.Inline expr)
+    {
+        return new ExprNode.Inline(expr.global, expr.function, expr.slot, compileExprs(expr.call.arguments), compile(expr.body), compile(expr.call));
+    }
+
+    @Override
+    public ExprNode visitGetExpr(Expr.Get expr)
+    {
+        return new ExprNode.Get(compile(expr.object), expr.name);
+    }
+
+    @Override
+    public ExprNode visitSetExpr(Expr.Set expr)
+    {
+        return new ExprNode.Set(compile(expr.object), expr.name, compile(expr.value));
+    }
+
+    @Override
+    public ExprNode visitAnonymousFunctionExpr(Expr.AnonymousFunction expr)
+    {
+        return new ExprNode.Lambda(expr, compileBody(expr.body));
+    }
+
+    @Override
+    public ExprNode visitArrayExpr(Expr.Array expr)
+    {
+        return new ExprNode.ArrayLiteral(compileExprs(expr.elements));
+    }
+}
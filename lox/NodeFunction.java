@@ -0,0 +1,47 @@
+package lox;
+
+//a LoxFunction whose body has been compiled to StmtNodes, so calling it never goes back through the Interpreter.
+class NodeFunction extends LoxFunction {
+    final StmtNode[] body;
+
+    NodeFunction(Stmt.Function decl, Cell[] upvalues, StmtNode[] body)
+    {
+        this(decl, upvalues, body, null);
+    }
+
+    NodeFunction(Stmt.Function decl, Cell[] upvalues, StmtNode[] body, LoxInstance receiver)
+    {
+        super(decl, upvalues, receiver);
+        this.body = body;
+    }
+
+    @Override
+    Object invoke(Interpreter interpreter, LoxInstance self, Object a0, Object a1, Object a2, Object[] rest)
+    {
+        JitCode compiled = Jit.entry(declaration);
+        if(compiled != null) return compiled.invoke(interpreter, upvalues, self, a0, a1, a2, rest);
+
+        Environment environment = interpreter.pushFrame(upvalues, declaration.slotCount);
+        frame(environment, self, a0, a1, a2, rest);
+        try
+        {
+            if(StmtNode.executeAll(body, environment) == StmtNode.RETURN)
+            {
+                Object value = StmtNode.returnValue;
+                StmtNode.returnValue = null; //dont keep the returned object alive longer than needed
+                return value;
+            }
+            return null;
+        }
+        finally
+        {
+            interpreter.popFrame(declaration.slotCount);
+        }
+    }
+
+    @Override
+    LoxFunction bind(LoxInstance instance)
+    {
+        return new NodeFunction(declaration, upvalues, body, instance);
+    }
+}
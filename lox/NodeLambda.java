@@ -0,0 +1,24 @@
+package lox;
+
+//anonymous function counterpart of NodeFunction.
+class NodeLambda extends LoxAnonymousFunction {
+    final StmtNode[] body;
+
+    NodeLambda(Expr.AnonymousFunction decl, Cell[] upvalues, StmtNode[] body)
+    {
+        super(decl, upvalues);
+        this.body = body;
+    }
+
+    @Override
+    Object run(Interpreter interpreter, Environment environment)
+    {
+        if(StmtNode.executeAll(body, environment) == StmtNode.RETURN)
+        {
+            Object value = StmtNode.returnValue;
+            StmtNode.returnValue = null;
+            return value;
+        }
+        return null;
+    }
+}
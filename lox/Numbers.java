@@ -0,0 +1,136 @@
+package lox;
+
+//Lox has one number type but two representations : integer literals and the results of integer arithmetic are Long, everything else is Double.
+//A Long is only kept while it can not be told apart from the Double it stands for, i.e. while it is within +-2^53 where doubles are exact,
+//and never for -0 which a long can not hold. Anything else is handed back as the Double the plain double arithmetic would have produced,
+//so every operation gives the same value, prints the same and compares the same as before, integer operands just skip the floating point.
+
+final class Numbers {
+    static final long MAX_EXACT = 1L << 53;
+
+    private Numbers()
+    {
+    }
+
+    static boolean isNumber(Object value)
+    {
+        return value instanceof Long || value instanceof Double;
+    }
+
+    static double toDouble(Object value) //the same ClassCastException a non-number always caused
+    {
+        if(value instanceof Long) return (long)value;
+        return (double)value;
+    }
+
+    static Object integer(long value) //boxes an exact integer result, as a Double once it has left the range a double holds exactly
+    {
+        if(value > MAX_EXACT || value < -MAX_EXACT) return (double)value;
+        return value;
+    }
+
+    static Object add(long l, long r) //both within +-2^53, so neither this nor subtract() can overflow
+    {
+        return integer(l + r);
+    }
+
+    static Object subtract(long l, long r)
+    {
+        return integer(l - r);
+    }
+
+    static Object multiply(long l, long r)
+    {
+        if(l != (int)l || r != (int)r) return (double)l * (double)r; //the product might overflow a long
+        long product = l * r;
+        if(product == 0 && (l < 0 || r < 0)) return -0.0;
+        return integer(product);
+    }
+
+    static Object divide(long l, long r, Token operator)
+    {
+        if(r == 0) throw new RuntimeError(operator, "Division by Zero is not permitted");
+        if(l % r != 0 || (l == 0 && r < 0)) return (double)l / (double)r;
+        return l / r;
+    }
+
+    static Object negate(Object value)
+    {
+        if(value instanceof Long)
+        {
+            if((long)value == 0) return -0.0;
+            return -(long)value;
+        }
+        return -(double)value;
+    }
+
+    //Object versions for the engines that work on boxed values, the operands are already checked to be numbers
+
+    static Object add(Object l, Object r)
+    {
+        if(l instanceof Long && r instanceof Long) return add((long)l, (long)r);
+        return toDouble(l) + toDouble(r);
+    }
+
+    static Object subtract(Object l, Object r)
+    {
+        if(l instanceof Long && r instanceof Long) return subtract((long)l, (long)r);
+        return toDouble(l) - toDouble(r);
+    }
+
+    static Object multiply(Object l, Object r)
+    {
+        if(l instanceof Long && r instanceof Long) return multiply((long)l, (long)r);
+        return toDouble(l) * toDouble(r);
+    }
+
+    static Object divide(Object l, Object r, Token operator)
+    {
+        if(l instanceof Long && r instanceof Long) return divide((long)l, (long)r, operator);
+        if(toDouble(r) == 0) throw new RuntimeError(operator, "Division by Zero is not permitted");
+        return toDouble(l) / toDouble(r);
+    }
+
+    static boolean greater(Object l, Object r)
+    {
+        if(l instanceof Long && r instanceof Long) return (long)l > (long)r;
+        return toDouble(l) > toDouble(r);
+    }
+
+    static boolean greaterEqual(Object l, Object r)
+    {
+        if(l instanceof Long && r instanceof Long) return (long)l >= (long)r;
+        return toDouble(l) >= toDouble(r);
+    }
+
+    static boolean less(Object l, Object r)
+    {
+        if(l instanceof Long && r instanceof Long) return (long)l < (long)r;
+        return toDouble(l) < toDouble(r);
+    }
+
+    static boolean lessEqual(Object l, Object r)
+    {
+        if(l instanceof Long && r instanceof Long) return (long)l <= (long)r;
+        return toDouble(l) <= toDouble(r);
+    }
+
+    static boolean equal(Object l, Object r) //what Double.equals() does on the values : NaN equals NaN and 0 does not equal -0
+    {
+        if(l instanceof Long && r instanceof Long) return (long)l == (long)r;
+        return Double.doubleToLongBits(toDouble(l)) == Double.doubleToLongBits(toDouble(r));
+    }
+
+    static String concat(Object number) //a number joined to a string keeps the Double spelling, 8 + "b" is still "8.0b"
+    {
+        return Double.toString(toDouble(number));
+    }
+
+    static String stringify(Object number)
+    {
+        if(number instanceof Long && (long)number < 10000000 && (long)number > -10000000) return Long.toString((long)number); //Double.toString switches to 1.0E7 past this
+        String printed = Double.toString(toDouble(number)); //cosmetic to remove trailing .0
+        if(printed.endsWith(".0")) return printed.substring(0, printed.length() - 2);
+        return printed;
+    }
+}
@@ -0,0 +1,58 @@
+package lox;
+
+//instruction set of the bytecode VM. Opcodes are plain byte constants rather than an enum so the dispatch loop in VM can switch on the raw byte.
+//operands follow the opcode in the code stream, u8 is one byte, u16 two bytes and u32 four bytes (big endian).
+//The _WIDE variants are only emitted for operands that do not fit the short form, so ordinary code stays compact.
+
+final class OpCode {
+    static final byte CONSTANT      = 0;  //u16 constant index
+    static final byte NIL           = 1;
+    static final byte TRUE          = 2;
+    static final byte FALSE         = 3;
+    static final byte POP           = 4;
+    static final byte GET_LOCAL     = 5;  //u8 slot
+    static final byte SET_LOCAL     = 6;  //u8 slot
+    static final byte GET_GLOBAL    = 7;  //u16 global index
+    static final byte DEFINE_GLOBAL = 8;  //u16 global index
+    static final byte SET_GLOBAL    = 9;  //u16 global index
+    static final byte GET_UPVALUE   = 10; //u8 upvalue index
+    static final byte SET_UPVALUE   = 11; //u8 upvalue index
+    static final byte GET_PROPERTY  = 12; //u16 name constant
+    static final byte SET_PROPERTY  = 13; //u16 name constant
+    static final byte GET_SUPER     = 14; //u16 name constant
+    static final byte EQUAL         = 15;
+    static final byte NOT_EQUAL     = 16;
+    static final byte GREATER       = 17;
+    static final byte GREATER_EQUAL = 18;
+    static final byte LESS          = 19;
+    static final byte LESS_EQUAL    = 20;
+    static final byte ADD           = 21;
+    static final byte SUBTRACT      = 22;
+    static final byte MULTIPLY      = 23;
+    static final byte DIVIDE        = 24;
+    static final byte NOT           = 25;
+    static final byte NEGATE        = 26;
+    static final byte PRINT         = 27;
+    static final byte JUMP          = 28; //u16 forward offset
+    static final byte JUMP_IF_FALSE = 29; //u16 forward offset, leaves the condition on the stack
+    static final byte LOOP          = 30; //u16 backward offset
+    static final byte CALL          = 31; //u8 argument count
+    static final byte INVOKE        = 32; //u16 name constant, u8 argument count
+    static final byte SUPER_INVOKE  = 33; //u16 name constant, u8 argument count
+    static final byte CLOSURE       = 34; //u16 function constant, then (u8 isLocal, u16 index) for every upvalue
+    static final byte CLOSE_UPVALUE = 35;
+    static final byte RETURN        = 36;
+    static final byte CLASS         = 37; //u16 name constant
+    static final byte INHERIT       = 38;
+    static final byte METHOD        = 39; //u16 name constant
+    static final byte STATIC_METHOD = 40; //u16 name constant
+    static final byte ARRAY         = 41; //u16 element count
+    static final byte GET_LOCAL_WIDE   = 42; //u16 slot
+    static final byte SET_LOCAL_WIDE   = 43; //u16 slot
+    static final byte GET_UPVALUE_WIDE = 44; //u16 upvalue index
+    static final byte SET_UPVALUE_WIDE = 45; //u16 upvalue index
+    static final byte JUMP_WIDE        = 46; //u32 forward offset, only found in the trampolines of BytecodeCompiler
+    static final byte LOOP_WIDE        = 47; //u32 backward offset
+
+    private OpCode() {}
+}
@@ -0,0 +1,563 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+//runs after the Resolver and folds every operator whose operands are literals into the literal it evaluates to, so 60 * 60 * 24 or
+//"a" + "b" is computed once here instead of on every execution. An if, ternary, 'and' or 'or' whose condition is a literal is replaced by
+//the branch that would run. Each node hands back what should take its place, parents store that in their (non final) child fields.
+//Folding uses the same JitRuntime helpers the compiled code calls, so a folded value is exactly what the Interpreter would have computed.
+//Anything that would throw, like 1 / 0 or -"a", is left in place to raise its error at runtime, on the line it always did.
+//
+//inline() then replaces calls to small global functions, whose whole body is 'return <expression>;', by a copy of that expression.
+//The arguments are stored in slots added to the end of the calling frame and the copy reads its parameters from there, so the call
+//costs no frame, no argument passing and no return. The Expr.Inline left behind checks at runtime that the global still holds the function
+//it was inlined from and makes the real call otherwise. Only calls inside a frame (a function, or a top level block or loop) are inlined.
+
+class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+    static boolean log = false; //--inline-log reports every inlined function to stderr
+    private static final int MAX_INLINE_SIZE = 16; //expression nodes in the body of a function worth inlining
+
+    private Map<String, Stmt.Function> candidates = null; //the inlinable global functions by name, null while only folding
+    private final Map<Stmt.Function, Integer> sites = new LinkedHashMap<>(); //how often each one was inlined
+    private Object frame = null; //the Stmt.Function, Expr.AnonymousFunction or top level Stmt.Block / Stmt.For whose frame the code runs in
+
+    //thrown by Copy for a body that can not be inlined
+    private static class NotInlinable extends RuntimeException {
+        NotInlinable()
+        {
+            super(null, null, false, false);
+        }
+    }
+
+    void optimize(List<Stmt> statements)
+    {
+        fold(statements);
+    }
+
+    int inline(List<Stmt> statements) //returns the number of inlined call sites
+    {
+        candidates = new LinkedHashMap<>();
+        for(Stmt statement : statements)
+        {
+            if(statement instanceof Stmt.Function && inlinable((Stmt.Function)statement))
+            {
+                Stmt.Function function = (Stmt.Function)statement;
+                candidates.put(function.name.lexeme, function);
+            }
+        }
+        if(!candidates.isEmpty()) fold(statements); //folding again changes nothing, only the calls get replaced
+
+        int total = 0;
+        for(Map.Entry<Stmt.Function, Integer> entry : sites.entrySet())
+        {
+            Stmt.Function function = entry.getKey();
+            if(log) System.err.println("[inline] inlined " + function.name.lexeme + " (line " + function.name.line + ") at " + entry.getValue() + " call site(s)");
+            total += entry.getValue();
+        }
+        if(log) System.err.println("[inline] " + total + " call site(s) inlined");
+        candidates = null;
+        sites.clear();
+        return total;
+    }
+
+    private static boolean inlinable(Stmt.Function function)
+    {
+        if(function.slot != -1 || function.body.size() != 1 || !(function.body.get(0) instanceof Stmt.Return)) return false; //a global 'return <expression>;'
+        Expr value = ((Stmt.Return)function.body.get(0)).value;
+        if(value == null || function.cellParams.length != 0 || function.captures.length != 0) return false;
+        try
+        {
+            Copy copy = new Copy(function, 0);
+            copy.copy(value);
+            return copy.size <= MAX_INLINE_SIZE;
+        }
+        catch(NotInlinable e)
+        {
+            return false;
+        }
+    }
+
+    private int allocate(int count) //claims count slots at the end of the running frame, for the arguments of an inlined call
+    {
+        int slot;
+        if(frame instanceof Stmt.Function)
+        {
+            Stmt.Function function = (Stmt.Function)frame;
+            slot = function.slotCount;
+            function.slotCount += count;
+        }
+        else if(frame instanceof Expr.AnonymousFunction)
+        {
+            Expr.AnonymousFunction function = (Expr.AnonymousFunction)frame;
+            slot = function.slotCount;
+            function.slotCount += count;
+        }
+        else if(frame instanceof Stmt.Block)
+        {
+            Stmt.Block block = (Stmt.Block)frame;
+            slot = block.slotCount;
+            block.slotCount += count;
+        }
+        else
+        {
+            Stmt.For loop = (Stmt.For)frame;
+            slot = loop.slotCount;
+            loop.slotCount += count;
+        }
+        return slot;
+    }
+
+    private void fold(List<Stmt> statements)
+    {
+        for(int i = 0; i < statements.size(); i ++)
+        {
+            statements.set(i, fold(statements.get(i)));
+        }
+    }
+
+    private Stmt fold(Stmt stmt)
+    {
+        return stmt.accept(this);
+    }
+
+    private Expr fold(Expr expr)
+    {
+        return expr.accept(this);
+    }
+
+    private static Expr.Literal literal(Expr expr) //null unless the expression is a constant
+    {
+        return expr instanceof Expr.Literal ? (Expr.Literal)expr : null;
+    }
+
+    //---------------------------------------------------------------- statements
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt)
+    {
+        Object enclosing = frame;
+        if(frame == null) frame = stmt; //a top level block has a frame of its own, see Resolver
+        fold(stmt.Statements);
+        frame = enclosing;
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt)
+    {
+        stmt.expression = fold(stmt.expression);
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitIfStmt(Stmt.If stmt)
+    {
+        stmt.condition = fold(stmt.condition);
+        stmt.trueBranch = fold(stmt.trueBranch);
+        if(stmt.falseBranch != null) stmt.falseBranch = fold(stmt.falseBranch);
+
+        Expr.Literal condition = literal(stmt.condition);
+        if(condition == null) return stmt;
+        if(Interpreter.isTruthy(condition.value)) return stmt.trueBranch;
+        if(stmt.falseBranch != null) return stmt.falseBranch;
+        return new Stmt.Block(new ArrayList<>()); //nothing runs, an empty block that needs no frame
+    }
+
+    @Override
+    public Stmt visitPrintStmt(Stmt.Print stmt)
+    {
+        stmt.expression = fold(stmt.expression);
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt)
+    {
+        if(stmt.intializer != null) stmt.intializer = fold(stmt.intializer);
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitClassStmt(Stmt.Class stmt)
+    {
+        for(Stmt.Function method : stmt.methods)
+        {
+            visitFunctionStmt(method);
+        }
+        for(Stmt.Function method : stmt.staticmethods)
+        {
+            visitFunctionStmt(method);
+        }
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt)
+    {
+        stmt.condition = fold(stmt.condition);
+        stmt.body = fold(stmt.body);
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitForStmt(Stmt.For stmt)
+    {
+        Object enclosing = frame;
+        if(frame == null) frame = stmt;
+        if(stmt.initializer != null) stmt.initializer = fold(stmt.initializer);
+        stmt.condition = fold(stmt.condition);
+        if(stmt.increment != null) stmt.increment = fold(stmt.increment);
+        stmt.body = fold(stmt.body);
+        frame = enclosing;
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitBreakStmt(Stmt.Break stmt)
+    {
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitFunctionStmt(Stmt.Function stmt)
+    {
+        Object enclosing = frame;
+        frame = stmt;
+        fold(stmt.body);
+        frame = enclosing;
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitReturnStmt(Stmt.Return stmt)
+    {
+        if(stmt.value != null) stmt.value = fold(stmt.value);
+        return stmt;
+    }
+
+    //---------------------------------------------------------------- expressions
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr)
+    {
+        expr.value = fold(expr.value);
+        return expr;
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr)
+    {
+        expr.left = fold(expr.left);
+        expr.right = fold(expr.right);
+
+        Expr.Literal left = literal(expr.left);
+        Expr.Literal right = literal(expr.right);
+        if(left == null || right == null) return expr;
+        try
+        {
+            return new Expr.Literal(binary(expr.operator, left.value, right.value));
+        }
+        catch(RuntimeException e) //a RuntimeError, or the ClassCastException the Interpreter runs into for some non-numbers
+        {
+            return expr;
+        }
+    }
+
+    private static Object binary(Token operator, Object l, Object r)
+    {
+        switch(operator.type)
+        {
+            case PLUS: return JitRuntime.add(l, r, operator);
+            case MINUS: return JitRuntime.subtract(l, r, operator);
+            case STAR: return JitRuntime.multiply(l, r, operator);
+            case SLASH: return JitRuntime.divide(l, r, operator);
+            case GREATER: return JitRuntime.greater(l, r, operator);
+            case GREATER_EQUAL: return JitRuntime.greaterEqual(l, r, operator);
+            case LESS: return JitRuntime.less(l, r, operator);
+            case LESS_EQUAL: return JitRuntime.lessEqual(l, r, operator);
+            case EQUAL_EQUAL: return JitRuntime.equal(l, r);
+            case BANG_EQUAL: return JitRuntime.notEqual(l, r);
+            default: return null;
+        }
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr)
+    {
+        expr.expression = fold(expr.expression);
+        if(literal(expr.expression) != null) return expr.expression;
+        return expr;
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr)
+    {
+        return expr;
+    }
+
+    @Override
+    public Expr visitLogicalExpr(Expr.Logical expr)
+    {
+        expr.left = fold(expr.left);
+        expr.right = fold(expr.right);
+
+        Expr.Literal left = literal(expr.left);
+        if(left == null) return expr;
+        boolean truth = Interpreter.isTruthy(left.value);
+        if(expr.operator.type == TokenType.OR ? truth : !truth) return left; //short circuits to the left operand's value
+        return expr.right;
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr)
+    {
+        expr.right = fold(expr.right);
+
+        Expr.Literal right = literal(expr.right);
+        if(right == null) return expr;
+        if(expr.operator.type == TokenType.BANG) return new Expr.Literal(JitRuntime.not(right.value));
+        try
+        {
+            return new Expr.Literal(JitRuntime.negate(right.value));
+        }
+        catch(RuntimeException e) //-"a" and -nil fail at runtime
+        {
+            return expr;
+        }
+    }
+
+    @Override
+    public Expr visitTernaryExpr(Expr.Ternary expr)
+    {
+        expr.Condition = fold(expr.Condition);
+        expr.TrueBranch = fold(expr.TrueBranch);
+        expr.FalseBranch = fold(expr.FalseBranch);
+
+        Expr.Literal condition = literal(expr.Condition);
+        if(condition == null) return expr;
+        return Interpreter.isTruthy(condition.value) ? expr.TrueBranch : expr.FalseBranch;
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr)
+    {
+        return expr;
+    }
+
+    @Override
+    public Expr visitThisExpr(Expr.This expr)
+    {
+        return expr;
+    }
+
+    @Override
+    public Expr visitSuperExpr(Expr.Super expr)
+    {
+        return expr;
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr)
+    {
+        expr.calee = fold(expr.calee);
+        foldAll(expr.arguments);
+        if(candidates == null || frame == null || !(expr.calee instanceof Expr.Variable)) return expr;
+
+        Expr.Variable callee = (Expr.Variable)expr.calee;
+        Stmt.Function function = callee.global == null ? null : candidates.get(callee.name.lexeme);
+        if(function == null || function.parameters.size() != expr.arguments.size()) return expr; //a wrong argument count fails at runtime as before
+
+        int slot = allocate(expr.arguments.size());
+        Expr body = new Copy(function, slot).copy(((Stmt.Return)function.body.get(0)).value);
+        sites.merge(function, 1, Integer::sum);
+        return new Expr.Inline(expr, callee.global, function, slot, body);
+    }
+
+    @Override
+    public Expr visitGetExpr(Expr.Get expr)
+    {
+        expr.object = fold(expr.object);
+        return expr;
+    }
+
+    @Override
+    public Expr visitSetExpr(Expr.Set expr)
+    {
+        expr.object = fold(expr.object);
+        expr.value = fold(expr.value);
+        return expr;
+    }
+
+    @Override
+    public Expr visitAnonymousFunctionExpr(Expr.AnonymousFunction expr)
+    {
+        Object enclosing = frame;
+        frame = expr;
+        fold(expr.body);
+        frame = enclosing;
+        return expr;
+    }
+
+    @Override
+    public Expr visitArrayExpr(Expr.Array expr)
+    {
+        foldAll(expr.elements);
+        return expr;
+    }
+
+    @Override
+    public Expr visitInlineExpr(Expr.Inline expr)
+    {
+        return expr;
+    }
+
+    private void foldAll(List<Expr> expressions)
+    {
+        for(int i = 0; i < expressions.size(); i ++)
+        {
+            expressions.set(i, fold(expressions.get(i)));
+        }
+    }
+
+    //copies the body of an inlinable function for one call site. Parameters (the only locals such a body has) are moved to the caller's
+    //frame from base on, globals keep their Cell. Anything that needs the function's own frame or calls the function itself is refused.
+    private static class Copy implements Expr.Visitor<Expr> {
+        final Stmt.Function function;
+        final int base;
+        int size = 0;
+
+        Copy(Stmt.Function function, int base)
+        {
+            this.function = function;
+            this.base = base;
+        }
+
+        Expr copy(Expr expr)
+        {
+            size++;
+            return expr.accept(this);
+        }
+
+        private List<Expr> copyAll(List<Expr> expressions)
+        {
+            List<Expr> copies = new ArrayList<>();
+            for(Expr expr : expressions)
+            {
+                copies.add(copy(expr));
+            }
+            return copies;
+        }
+
+        private boolean recursive(Token name)
+        {
+            return name.lexeme.equals(function.name.lexeme);
+        }
+
+        @Override
+        public Expr visitAssignExpr(Expr.Assign expr)
+        {
+            Expr.Assign copy = new Expr.Assign(expr.name, copy(expr.value));
+            if(expr.slot != -1) copy.slot = base + expr.slot;
+            else if(recursive(expr.name)) throw new NotInlinable();
+            else copy.global = expr.global;
+            return copy;
+        }
+
+        @Override
+        public Expr visitBinaryExpr(Expr.Binary expr)
+        {
+            return new Expr.Binary(copy(expr.left), expr.operator, copy(expr.right));
+        }
+
+        @Override
+        public Expr visitGroupingExpr(Expr.Grouping expr)
+        {
+            return new Expr.Grouping(copy(expr.expression));
+        }
+
+        @Override
+        public Expr visitLiteralExpr(Expr.Literal expr)
+        {
+            return expr;
+        }
+
+        @Override
+        public Expr visitLogicalExpr(Expr.Logical expr)
+        {
+            return new Expr.Logical(copy(expr.left), expr.operator, copy(expr.right));
+        }
+
+        @Override
+        public Expr visitUnaryExpr(Expr.Unary expr)
+        {
+            return new Expr.Unary(expr.operator, copy(expr.right));
+        }
+
+        @Override
+        public Expr visitTernaryExpr(Expr.Ternary expr)
+        {
+            return new Expr.Ternary(copy(expr.Condition), copy(expr.TrueBranch), copy(expr.FalseBranch));
+        }
+
+        @Override
+        public Expr visitVariableExpr(Expr.Variable expr)
+        {
+            Expr.Variable copy = new Expr.Variable(expr.name);
+            if(expr.slot != -1) copy.slot = base + expr.slot;
+            else if(recursive(expr.name)) throw new NotInlinable();
+            else copy.global = expr.global;
+            return copy;
+        }
+
+        @Override
+        public Expr visitThisExpr(Expr.This expr)
+        {
+            throw new NotInlinable();
+        }
+
+        @Override
+        public Expr visitSuperExpr(Expr.Super expr)
+        {
+            throw new NotInlinable();
+        }
+
+        @Override
+        public Expr visitCallExpr(Expr.Call expr)
+        {
+            return new Expr.Call(copy(expr.calee), expr.paren, copyAll(expr.arguments));
+        }
+
+        @Override
+        public Expr visitGetExpr(Expr.Get expr)
+        {
+            return new Expr.Get(copy(expr.object), expr.name);
+        }
+
+        @Override
+        public Expr visitSetExpr(Expr.Set expr)
+        {
+            return new Expr.Set(copy(expr.object), expr.name, copy(expr.value));
+        }
+
+        @Override
+        public Expr visitAnonymousFunctionExpr(Expr.AnonymousFunction expr)
+        {
+            throw new NotInlinable();
+        }
+
+        @Override
+        public Expr visitArrayExpr(Expr.Array expr)
+        {
+            return new Expr.Array(copyAll(expr.elements));
+        }
+
+        @Override
+        public Expr visitInlineExpr(Expr.Inline expr) //a call already inlined into the body is copied as the plain call, inlining only goes one level deep
+        {
+            return copy(expr.call);
+        }
+    }
+}
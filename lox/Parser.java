@@ -1,7 +1,6 @@
 package lox;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 import static lox.TokenType.*;
@@ -11,11 +10,11 @@ class Parser
 
     private static class ParseError extends RuntimeException {}
 
-    private final List<Token> tokens;
+    private final TokenBuffer tokens; //Tokens are only made for what ends up in the AST or in an error, see previous() and peek()
     private int current = 0;
     private boolean Repl_Mode;
 
-    Parser(List<Token> tokens, boolean repl_mode)
+    Parser(TokenBuffer tokens, boolean repl_mode)
     {
         this.tokens = tokens;
         this.Repl_Mode = repl_mode;
@@ -49,7 +48,8 @@ class Parser
 
     private Stmt varDeclaration()
     {
-        Token name = consume(IDENTIFIER, "Expected name for the variable.");
+        consume(IDENTIFIER, "Expected name for the variable.");
+        Token name = previous();
 
         Expr intializer = null;
 
@@ -84,7 +84,8 @@ class Parser
 
     private Stmt.Function function(String kind)
     {
-        Token name = consume(IDENTIFIER, "Expected " + kind + " name.");
+        consume(IDENTIFIER, "Expected " + kind + " name.");
+        Token name = previous();
         consume(LEFT_PAREN, "Expected '(' after " + kind + " name.");
 
         List<Token> parameters = new ArrayList<>();
@@ -96,7 +97,8 @@ class Parser
                 {
                     error(peek(), "Cannot have more than 255 parameters.");
                 }
-                parameters.add(consume(IDENTIFIER, "Expected parameter name."));
+                consume(IDENTIFIER, "Expected parameter name.");
+                parameters.add(previous());
             }
             while(match(COMMA));
         }
@@ -110,11 +112,13 @@ class Parser
 
     private Stmt classDeclaration()
     {
-        Token name = consume(IDENTIFIER, "Expected name for the class.");
+        consume(IDENTIFIER, "Expected name for the class.");
+        Token name = previous();
         Expr.Variable superclass = null;
         if(match(LESS))
         {
-            Token superclassname = consume(IDENTIFIER, "Expected superclass name.");
+            consume(IDENTIFIER, "Expected superclass name.");
+            Token superclassname = previous();
             superclass = new Expr.Variable(superclassname);
         }
 
@@ -211,17 +215,18 @@ class Parser
 
     private Stmt While()
     {
+        Token keyword = previous();
         consume(LEFT_PAREN, "Expected '(' after 'while'");
         Expr condition = expression();
         consume(RIGHT_PAREN, "Expected ')' after the condition");
         Stmt stmt = statement();
 
-        return new Stmt.While(condition, stmt);
+        return new Stmt.While(keyword, condition, stmt);
     }
 
     private Stmt For()
     {
-        //we basically "desugar" the for loop into a while loop
+        Token keyword = previous();
         consume(LEFT_PAREN, "Expected '(' after 'for'");
         Stmt initializer;
         if(match(SEMICOLON))
@@ -253,20 +258,8 @@ class Parser
 
         Stmt body = statement();
 
-        if(increment != null)
-        {
-            body = new Stmt.Block(Arrays.asList(body, new Stmt.Expression(increment))); //basically append the increment condition to the end of the loop body
-        }
-
         if(condition == null) condition = new Expr.Literal(true);
-        body = new Stmt.While(condition, body); //add the loop condition to the beginning of the loop body
-
-        if(initializer != null) //run the intiliazer condition if any once before the while loop starts running
-        {
-            body = new Stmt.Block(Arrays.asList(initializer, body));
-        }
-
-        return body;
+        return new Stmt.For(keyword, initializer, condition, increment, body); //a node of its own instead of a Block around a While, so running it needs no extra scopes
     }
 
     private Stmt breakStatement()
@@ -288,144 +281,114 @@ class Parser
         return new Stmt.Return(keyword, value);
     }
 
-    private Expr expression()
+    //expressions are parsed by precedence climbing over the tables below instead of one method per grammar rule, which took about ten Java
+    //frames for every operand. The levels are the rules of the grammar, each binding tighter than the one before :
+    //assignment, ternary, or, and, equality, comparision, term, factor, unary, then calls and property access.
+    //The trees come out exactly as the rules give them, including their quirks : 'or' and 'and' take a single right operand
+    //(so 'a or b or c' does not parse), the right operand of 'and' is a whole ternary, and '[' after an expression is skipped.
+    private static final int ASSIGNMENT = 1;
+    private static final int TERNARY = 2;
+    private static final int LOGIC_OR = 3;
+    private static final int LOGIC_AND = 4;
+    private static final int EQUALITY = 5;
+    private static final int COMPARISION = 6;
+    private static final int TERM = 7;
+    private static final int FACTOR = 8;
+    private static final int UNARY = 9;
+
+    private static final int[] BINARY = new int[TokenType.values().length]; //level of each left associative binary operator, 0 for every other token
+
+    static
     {
-        return assignment();
-    }
-
-    private Expr assignment()
-    {
-        Expr expr = ternary();
-
-        if(match(EQUAL))
-        {
-            Token equals_symbol = previous();
-            Expr value = assignment(); //assignment is right associative, thats why we do right recursion here
-
-            if(expr instanceof Expr.Variable)
-            {
-                Token name = ((Expr.Variable)expr).name;
-                return new Expr.Assign(name, value);
-            }
-            if(expr instanceof Expr.Get)
-            {
-                Expr.Get get = (Expr.Get)expr;
-                return new Expr.Set(get.object, get.name , value);
-            }
-
-            error(equals_symbol, "Invalid assignment target."); //the thing we are trying to assign a value to is not a variable
-        }
-
-        return expr;
+        BINARY[BANG_EQUAL.ordinal()] = EQUALITY;
+        BINARY[EQUAL_EQUAL.ordinal()] = EQUALITY;
+        BINARY[GREATER.ordinal()] = COMPARISION;
+        BINARY[GREATER_EQUAL.ordinal()] = COMPARISION;
+        BINARY[LESS.ordinal()] = COMPARISION;
+        BINARY[LESS_EQUAL.ordinal()] = COMPARISION;
+        BINARY[MINUS.ordinal()] = TERM;
+        BINARY[PLUS.ordinal()] = TERM;
+        BINARY[STAR.ordinal()] = FACTOR;
+        BINARY[SLASH.ordinal()] = FACTOR;
     }
 
-    private Expr ternary() // grammar rule ternary --> or "?" ternary ":" ternary, Notice the beauty : left recursive doesnt work in a recursive descent parsers, but right recusive does ! and ternary is right associative which is implemented by a right recursive rule.
+    private Expr expression()
     {
-       Expr expr = or();
-       if(match(QUESTION_MARK))
-       {
-          Expr trueBranch = ternary();
-          consume(COLON, ": Must be accompanied with the ? (else condition not specified)");
-          Expr falseBranch = ternary();
-          return new Expr.Ternary(expr, trueBranch, falseBranch);
-       }
-       return expr;
+        return expression(ASSIGNMENT);
     }
 
-    private Expr or()
+    //an expression of the given level, from ASSIGNMENT down to LOGIC_AND. Each of those rules applies at most once, innermost first
+    private Expr expression(int level)
     {
-        Expr expr = and();
+        Expr expr = binary(EQUALITY);
 
-        if(match(OR))
+        if(level <= LOGIC_AND && match(AND))
         {
             Token operator = previous();
-            Expr right = and();
-
-            return new Expr.Logical(expr, operator, right);
+            expr = new Expr.Logical(expr, operator, expression(TERNARY));
         }
 
-        return expr;
-    }
-
-    private Expr and()
-    {
-        Expr expr = equality();
-
-        if(match(AND))
+        if(level <= LOGIC_OR && match(OR))
         {
             Token operator = previous();
-            Expr right = ternary();
-
-            return new Expr.Logical(expr, operator, right);
+            expr = new Expr.Logical(expr, operator, expression(LOGIC_AND));
         }
 
-        return expr;
-    }
-
-
-    private Expr equality()
-    {
-        Expr expr = comparision();
-        while (match(BANG_EQUAL, EQUAL_EQUAL)) {
-            Token operator = previous();
-            Expr right = comparision();
-            expr = new Expr.Binary(expr, operator, right);
-          }
-
-          return expr;
-    }
-
-    private Expr comparision()
-    {
-        Expr expr = term();
-
-        while(match(GREATER, GREATER_EQUAL, LESS, LESS_EQUAL))
+        if(level <= TERNARY && match(QUESTION_MARK)) //ternary is right associative, so both branches are ternaries again
         {
-            Token operator = previous();
-            Expr right = term();
-            expr = new Expr.Binary(expr, operator, right);
+            Expr trueBranch = expression(TERNARY);
+            consume(COLON, ": Must be accompanied with the ? (else condition not specified)");
+            Expr falseBranch = expression(TERNARY);
+            expr = new Expr.Ternary(expr, trueBranch, falseBranch);
         }
 
-        return expr;
-    }
+        if(level <= ASSIGNMENT && match(EQUAL))
+        {
+            Token equals_symbol = previous();
+            Expr value = expression(ASSIGNMENT); //assignment is right associative, thats why we do right recursion here
 
-    private Expr term() {
-        Expr expr = factor();
+            if(expr instanceof Expr.Variable)
+            {
+                Token name = ((Expr.Variable)expr).name;
+                return new Expr.Assign(name, value);
+            }
+            if(expr instanceof Expr.Get)
+            {
+                Expr.Get get = (Expr.Get)expr;
+                return new Expr.Set(get.object, get.name , value);
+            }
 
-        while (match(MINUS, PLUS)) {
-          Token operator = previous();
-          Expr right = factor();
-          expr = new Expr.Binary(expr, operator, right);
+            error(equals_symbol, "Invalid assignment target."); //the thing we are trying to assign a value to is not a variable
         }
 
         return expr;
     }
 
-    private Expr factor()
+    private Expr binary(int level) //the binary operators of this level and the tighter ones, all left associative
     {
         Expr expr = unary();
 
-        while(match(STAR, SLASH))
+        while(true)
         {
+            int precedence = BINARY[tokens.type(current).ordinal()];
+            if(precedence < level) break; //also for any token that is not a binary operator, and EOF
+            advance();
             Token operator = previous();
-            Expr right = unary();
+            Expr right = binary(precedence + 1);
             expr = new Expr.Binary(expr, operator, right);
         }
 
         return expr;
     }
 
-    private Expr unary() {
-        if (match(BANG, MINUS)) {
+    private Expr unary() { //prefix operators, then the calls and property accesses after the operand
+        if (check(BANG) || check(MINUS)) {
+          advance();
           Token operator = previous();
           Expr right = unary();
           return new Expr.Unary(operator, right);
         }
-        return call_or_access();
-    }
 
-    private Expr call_or_access()
-    {
         Expr expr = primary();
 
         while(true)
@@ -436,7 +399,8 @@ class Parser
             }
             else if(match(DOT))
             {
-                Token name = consume(IDENTIFIER, "Expected property name after '.'");
+                consume(IDENTIFIER, "Expected property name after '.'");
+                Token name = previous();
                 expr = new Expr.Get(expr, name);
             }
             else if(match(LEFT_BRACKET)) //for array index access.
@@ -455,12 +419,13 @@ class Parser
         if (match(NIL)) return new Expr.Literal(null);
         if (match(LAMBDA)) return anonymousFunction();
 
-        if (match(NUMBER, STRING)) {
-          return new Expr.Literal(previous().literal);
+        if (check(NUMBER) || check(STRING)) {
+          advance();
+          return new Expr.Literal(tokens.literal(current - 1));
         }
 
         if (match(LEFT_PAREN)) {
-          Expr expr = expression();
+          Expr expr = expression(ASSIGNMENT); //straight to the top level, nested parentheses each take as few Java frames as possible
           consume(RIGHT_PAREN, "Expect ')' after expression.");
           return new Expr.Grouping(expr);
         }
@@ -469,7 +434,8 @@ class Parser
         {
             Token keyword = previous();
             consume(DOT, "Expected '.' after 'super'.");
-            Token method = consume(IDENTIFIER, "Expected superclass method name");
+            consume(IDENTIFIER, "Expected superclass method name");
+            Token method = previous();
             return new Expr.Super(keyword, method);
         }
         if(match(IDENTIFIER)) return new Expr.Variable(previous());
@@ -491,7 +457,8 @@ class Parser
             while(match(COMMA));
         }
 
-        Token paren = consume(RIGHT_PAREN, "Expected ')' after arguments.");
+        consume(RIGHT_PAREN, "Expected ')' after arguments.");
+        Token paren = previous();
 
         return new Expr.Call(callee, paren, args);
     }
@@ -508,7 +475,8 @@ class Parser
                 {
                     error(peek(), "Cannot have more than 255 parameters.");
                 }
-                parameters.add(consume(IDENTIFIER, "Expected parameter name."));
+                consume(IDENTIFIER, "Expected parameter name.");
+                parameters.add(previous());
             }
             while(match(COMMA));
         }    
@@ -519,21 +487,22 @@ class Parser
         return new Expr.AnonymousFunction(parameters, body);
     }
 
-    private boolean match(TokenType... types)
+    private boolean match(TokenType type) //one type at a time, a varargs array would be allocated on every call
     {
-        for(TokenType type : types)
+        if(check(type))
         {
-            if(check(type))
-            {
-                advance();
-                return true;
-            }
+            advance();
+            return true;
         }
         return false;
     }
 
-    private Token consume(TokenType type, String message) {
-        if (check(type)) return advance();
+    private void consume(TokenType type, String message) { //previous() is the token once it succeeded
+        if (check(type))
+        {
+            advance();
+            return;
+        }
 
         throw error(peek(), message);
     }
@@ -543,40 +512,39 @@ class Parser
         return new ParseError();
       }
 
-    private Token advance() {
+    private void advance() {
         if (!isAtEnd()) current++;
-        return previous();
     }
 
     private boolean check(TokenType type)
     {
         if(isAtEnd())return false;
-        if(peek().type == type)return true;
+        if(tokens.type(current) == type)return true;
         return false;
     }
 
-    private Token peek()
+    private Token peek() //only needed to report an error at the next token
     {
-        return tokens.get(current);
+        return tokens.token(current);
     }
 
     private boolean isAtEnd()
     {
-        return peek().type == EOF;
+        return tokens.type(current) == EOF;
     }
 
     private Token previous()
     {
-        return tokens.get(current - 1);
+        return tokens.token(current - 1);
     }
 
     private void synchronize() {
         advance();
 
         while (!isAtEnd()) {
-          if (previous().type == SEMICOLON) return;
+          if (tokens.type(current - 1) == SEMICOLON) return;
 
-          switch (peek().type) {
+          switch (tokens.type(current)) {
             case CLASS:
             case FUN:
             case VAR:
@@ -1,13 +1,14 @@
 package lox;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.List;
 import java.util.Stack;
 
 class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
-    private final Interpreter interpreter;
-    private final Stack<Map<String, Boolean>> scopes = new Stack<>();
+    private final Stack<Scope> scopes = new Stack<>();
+    private FunctionState currFrame = null; //the frame being resolved, null at the top level
     private FunctionType currFuntion = FunctionType.NONE;
     private ClassType currClass = ClassType.NONE;
     private boolean inLoop = false;
@@ -29,9 +30,83 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
 
     private Stack<INNERMOST> currStack = new Stack<>();
 
-    Resolver(Interpreter interpreter)
+    private static class LocalVar
     {
-        this.interpreter = interpreter;
+        final int slot; //index of the variable in its function's frame
+        boolean defined = false;
+        boolean captured = false; //a nested function refers to it, so it has to live in a Cell
+        final List<Object> uses = new ArrayList<>(); //the declaration and the uses from its own function, endScope() marks them when captured
+        Object declaration = null; //the Stmt that declared it, null for parameters, 'this' and 'super'
+        boolean assigned = false;
+        final List<Expr.Call> calls = new ArrayList<>(); //calls made through the plain name, bound by endScope() when it is a function or class never assigned
+
+        LocalVar(int slot)
+        {
+            this.slot = slot;
+        }
+    }
+
+    //the same for a global name, over everything resolved together. Natives and other runs (the REPL) can bind the name too,
+    //so a call to a global function is only bound with a guard.
+    private static class GlobalName
+    {
+        final List<Object> declarations = new ArrayList<>();
+        boolean assigned = false;
+        final List<Expr.Call> calls = new ArrayList<>();
+    }
+
+    //Closures are flat : instead of keeping the whole chain of Environments alive, a closure copies the Cells of just the variables
+    //it uses from enclosing functions into its own upvalue array when it is created. Only captured variables are boxed in a Cell,
+    //every other local is a plain slot in its function's frame, so frames never escape and blocks never need one.
+    //A FunctionState is one frame : every function and lambda, plus the top level blocks and the scope holding 'super'.
+    private static class FunctionState
+    {
+        final FunctionState enclosing;
+        final Map<LocalVar, Integer> upvalues = new HashMap<>();
+        final List<Integer> captures = new ArrayList<>(); //per upvalue : the Cell in that slot of the enclosing frame, or -1 - i for the enclosing closure's upvalue i
+        int nextSlot = 0; //slots in use right now, and the most ever in use, which is the size of the frame
+        int slotCount = 0;
+
+        FunctionState(FunctionState enclosing)
+        {
+            this.enclosing = enclosing;
+        }
+
+        int allocate()
+        {
+            int slot = nextSlot++;
+            if(nextSlot > slotCount) slotCount = nextSlot;
+            return slot;
+        }
+
+        int[] captures()
+        {
+            int[] result = new int[captures.size()];
+            for(int i = 0; i < result.length; i ++)
+            {
+                result[i] = captures.get(i);
+            }
+            return result;
+        }
+    }
+
+    private static class Scope
+    {
+        final Map<String, LocalVar> names = new HashMap<>();
+        final FunctionState function; //the frame holding this scope's variables
+
+        Scope(FunctionState function)
+        {
+            this.function = function;
+        }
+    }
+
+    private final Environment globals; //unresolved names get bound to their Cell in here
+    private final Map<String, GlobalName> globalNames = new HashMap<>();
+
+    Resolver(Environment globals)
+    {
+        this.globals = globals;
         currStack.push(INNERMOST.NONE); // Dont want an empty stack do we?
     }
 
@@ -51,32 +126,107 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
         {
             resolve(statement);
         }
+        if(scopes.isEmpty()) bindGlobalCalls(); //the whole program (or REPL line) is resolved, every global assignment has been seen
+    }
+
+    private GlobalName globalName(String name)
+    {
+        return globalNames.computeIfAbsent(name, k -> new GlobalName());
     }
 
     @Override
     public Void visitBlockStmt(Stmt.Block stmt)
     {
-        beginScope();
+        boolean topLevel = scopes.isEmpty();
+        if(topLevel) beginFrame(); //a top level block runs in a small frame of its own, any other block in its function's frame
+        scopes.push(new Scope(currFrame));
         resolve(stmt.Statements);
         endScope();
+        if(topLevel) stmt.slotCount = endFrame().slotCount;
         return null;
 
     }
 
-    private void beginScope()
+    private void beginFrame()
+    {
+        currFrame = new FunctionState(currFrame);
+    }
+
+    private FunctionState endFrame()
     {
-        scopes.push(new HashMap<String, Boolean>());
+        FunctionState frame = currFrame;
+        currFrame = frame.enclosing;
+        return frame;
     }
 
     private void endScope()
     {
-        scopes.pop();
+        Scope scope = scopes.pop();
+        for(LocalVar local : scope.names.values())
+        {
+            if(!local.assigned) bindCalls(local.calls, local.declaration, false);
+            if(!local.captured) continue;
+            for(Object use : local.uses)
+            {
+                box(use);
+            }
+        }
+        scope.function.nextSlot -= scope.names.size(); //the scope's slots are free again, so sibling blocks reuse them
+    }
+
+    private void bindGlobalCalls()
+    {
+        for(GlobalName name : globalNames.values())
+        {
+            if(!name.assigned && name.declarations.size() == 1 && name.declarations.get(0) instanceof Stmt.Function)
+            {
+                bindCalls(name.calls, name.declarations.get(0), true);
+            }
+        }
+        globalNames.clear();
+    }
+
+    //binds calls to the function or class a never assigned name always holds, when the argument count matches. A call with the wrong
+    //count stays unbound and fails at runtime like before, if it ever runs.
+    private static void bindCalls(List<Expr.Call> calls, Object declaration, boolean guarded)
+    {
+        int arity;
+        if(declaration instanceof Stmt.Function) arity = ((Stmt.Function)declaration).parameters.size();
+        else if(declaration instanceof Stmt.Class) arity = classArity((Stmt.Class)declaration);
+        else return;
+        if(arity == -1) return;
+
+        for(Expr.Call call : calls)
+        {
+            if(call.arguments.size() != arity) continue;
+            call.target = (Stmt)declaration;
+            call.guarded = guarded;
+        }
+    }
+
+    private static int classArity(Stmt.Class stmt) //the arity of init, -1 when it is inherited from a superclass we can not see
+    {
+        for(Stmt.Function method : stmt.methods)
+        {
+            if(method.name.lexeme.equals("init")) return method.parameters.size();
+        }
+        return stmt.superclass == null ? 0 : -1;
+    }
+
+    private static void box(Object node) //the variable lives in a Cell, so every access through this node has to go through it
+    {
+        if(node instanceof Expr.Variable) ((Expr.Variable)node).cell = true;
+        else if(node instanceof Expr.Assign) ((Expr.Assign)node).cell = true;
+        else if(node instanceof Expr.This) ((Expr.This)node).cell = true;
+        else if(node instanceof Stmt.Var) ((Stmt.Var)node).cell = true;
+        else if(node instanceof Stmt.Function) ((Stmt.Function)node).cell = true;
+        else if(node instanceof Stmt.Class) ((Stmt.Class)node).cell = true;
     }
 
     @Override
     public Void visitVarStmt(Stmt.Var stmt)
     {
-        declare(stmt.name);
+        stmt.slot = declare(stmt.name, stmt);
         if(stmt.intializer != null)
         {
             resolve(stmt.intializer);
@@ -85,35 +235,66 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
         return null;
     }
 
-    private void declare(Token name)
+    private int declare(Token name, Object declaration) //returns the slot of the variable, or -1 for globals. declaration is null for parameters
     {
-        if(scopes.isEmpty()) return;
+        if(scopes.isEmpty())
+        {
+            globalName(name.lexeme).declarations.add(declaration);
+            return -1;
+        }
 
-        if(scopes.peek().containsKey(name.lexeme))
+        Scope scope = scopes.peek();
+        if(scope.names.containsKey(name.lexeme))
         {
             Lox.error(name, "A variable with this name already exists in this scope");
+            return scope.names.get(name.lexeme).slot;
         }
-        scopes.peek().put(name.lexeme, false);
+        LocalVar local = new LocalVar(currFrame.allocate());
+        local.declaration = declaration;
+        if(declaration != null) local.uses.add(declaration);
+        scope.names.put(name.lexeme, local);
+        return local.slot;
     }
 
     private void define(Token name)
     {
         if(scopes.isEmpty())return;
-        scopes.peek().put(name.lexeme, true);
+        scopes.peek().names.get(name.lexeme).defined = true;
+    }
+
+    private void defineSpecial(String name) //'super' gets a frame of its own and 'this' is declared before the parameters, so both always end up in slot 0
+    {
+        LocalVar local = new LocalVar(currFrame.allocate());
+        local.defined = true;
+        scopes.peek().names.put(name, local);
     }
 
     @Override
     public Void visitAssignExpr(Expr.Assign expr)
     {
         resolve(expr.value);
-        resolveLocal(expr, expr.name);
+        Scope scope = scopeOf(expr.name);
+        if(scope == null)
+        {
+            expr.global = globals.global(expr.name.lexeme);
+            globalName(expr.name.lexeme).assigned = true;
+            return null;
+        }
+        LocalVar local = scope.names.get(expr.name.lexeme);
+        local.assigned = true;
+        if(scope.function == currFrame)
+        {
+            expr.slot = local.slot;
+            local.uses.add(expr);
+        }
+        else expr.upvalue = upvalue(currFrame, local, scope.function);
         return null;
     }
 
     @Override
     public Void visitFunctionStmt(Stmt.Function stmt) {
       currStack.add(INNERMOST.FUNC_OR_METHOD);
-      declare(stmt.name);
+      stmt.slot = declare(stmt.name, stmt);
       define(stmt.name);
 
       resolveFunction(stmt, FunctionType.FUNCTION);
@@ -124,13 +305,24 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
     private void resolveFunction(Stmt.Function function, FunctionType type) {
         FunctionType enclosing = currFuntion;
         currFuntion = type;
-        beginScope();
+        beginFrame();
+        Scope scope = new Scope(currFrame);
+        scopes.push(scope);
+        if(type == FunctionType.METHOD || type == FunctionType.INITIALIZER)
+        {
+            defineSpecial("this"); //methods get their receiver in slot 0 of their own frame, so calling one never needs a separate environment for it
+            function.paramStart = 1;
+        }
         for (Token param : function.parameters) {
-          declare(param);
+          declare(param, null);
           define(param);
         }
         resolve(function.body);
+        function.cellParams = cellParams(scope, function.paramStart == 1, function.parameters);
         endScope();
+        FunctionState frame = endFrame();
+        function.slotCount = frame.slotCount;
+        function.captures = frame.captures();
         currFuntion = enclosing;
     }
 
@@ -139,7 +331,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
     {
         ClassType prev = this.currClass;
         this.currClass = ClassType.CLASS; //to detect invalid uses of 'this'
-        declare(stmt.name);
+        stmt.slot = declare(stmt.name, stmt);
         define(stmt.name);
         if(stmt.superclass != null && stmt.superclass.name.lexeme.equals(stmt.name.lexeme))
         {
@@ -149,24 +341,27 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
         {
             this.currClass = ClassType.SUBCLASS;
             resolve(stmt.superclass);
-            beginScope(); //for handling 'super'.
-            scopes.peek().put("super", true);
+            beginFrame(); //for handling 'super'.
+            scopes.push(new Scope(currFrame));
+            defineSpecial("super");
+            scopes.peek().names.get("super").captured = true; //only methods use it, so it is always in a Cell
         }
         for(Stmt.Function staticmethod : stmt.staticmethods)
         {
             FunctionType declaration = FunctionType.STATICMETHOD;
             resolveFunction(staticmethod, declaration);
         }
-        beginScope();
-        scopes.peek().put("this", true);
         for(Stmt.Function method : stmt.methods)
         {
             FunctionType declaration = FunctionType.METHOD;
             if(method.name.lexeme.equals("init")) declaration = FunctionType.INITIALIZER;
             resolveFunction(method, declaration);
         }
-        endScope();
-        if(stmt.superclass != null) endScope();
+        if(stmt.superclass != null)
+        {
+            endScope();
+            stmt.captures = endFrame().captures();
+        }
         this.currClass = prev;
         return null;
     }
@@ -208,6 +403,26 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
         return null;
     }
 
+    @Override
+    public Void visitForStmt(Stmt.For stmt)
+    {
+        boolean topLevel = scopes.isEmpty();
+        if(topLevel) beginFrame(); //same as a block, the loop variable needs a frame at the top level
+        scopes.push(new Scope(currFrame)); //the loop variable is scoped to the loop, one variable shared by every iteration
+        if(stmt.initializer != null) resolve(stmt.initializer);
+        currStack.push(INNERMOST.LOOP);
+        boolean enclosing = inLoop;
+        resolve(stmt.condition);
+        inLoop = true;
+        resolve(stmt.body);
+        if(stmt.increment != null) resolve(stmt.increment);
+        inLoop = enclosing;
+        currStack.pop();
+        endScope();
+        if(topLevel) stmt.slotCount = endFrame().slotCount;
+        return null;
+    }
+
     @Override
     public Void visitReturnStmt(Stmt.Return stmt)
     {
@@ -241,25 +456,67 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
     @Override
     public Void visitVariableExpr(Expr.Variable expr)
     {
-        if(!scopes.empty() && scopes.peek().get(expr.name.lexeme) == Boolean.FALSE)
+        if(!scopes.empty() && scopes.peek().names.containsKey(expr.name.lexeme) && !scopes.peek().names.get(expr.name.lexeme).defined)
         {
             Lox.error(expr.name, "Cannot read local variable in its own intializer.");
             return null;
         }
 
-        resolveLocal(expr, expr.name);
+        Scope scope = scopeOf(expr.name);
+        if(scope == null)
+        {
+            expr.global = globals.global(expr.name.lexeme);
+            return null;
+        }
+        LocalVar local = scope.names.get(expr.name.lexeme);
+        if(scope.function == currFrame)
+        {
+            expr.slot = local.slot;
+            local.uses.add(expr);
+        }
+        else expr.upvalue = upvalue(currFrame, local, scope.function);
         return null;
     }
 
-    private void resolveLocal(Expr expr, Token name)
+    private Scope scopeOf(Token name) //the innermost scope declaring the name, null if it is left to the globals
     {
         for (int i = scopes.size() - 1; i >= 0; i--)
         {
-          if (scopes.get(i).containsKey(name.lexeme)) {
-            interpreter.resolve(expr, scopes.size() - 1 - i);
-            return;
-          }
+          Scope scope = scopes.get(i);
+          if (scope.names.containsKey(name.lexeme)) return scope;
         }
+        return null;
+    }
+
+    //index of the variable in the function's upvalues, capturing it on first use. The enclosing functions in between capture it too,
+    //so every closure only ever copies Cells from the frame or the closure it is created in.
+    private static int upvalue(FunctionState function, LocalVar local, FunctionState owner)
+    {
+        Integer index = function.upvalues.get(local);
+        if(index != null) return index;
+
+        local.captured = true;
+        int capture = function.enclosing == owner ? local.slot : -1 - upvalue(function.enclosing, local, owner);
+        function.captures.add(capture);
+        function.upvalues.put(local, function.captures.size() - 1);
+        return function.captures.size() - 1;
+    }
+
+    private static int[] cellParams(Scope scope, boolean hasThis, List<Token> parameters) //slots of 'this' and the parameters a closure captured, boxed when the call starts
+    {
+        List<Integer> slots = new ArrayList<>();
+        if(hasThis && scope.names.get("this").captured) slots.add(0);
+        for(Token param : parameters)
+        {
+            LocalVar local = scope.names.get(param.lexeme);
+            if(local.captured && !slots.contains(local.slot)) slots.add(local.slot);
+        }
+        int[] result = new int[slots.size()];
+        for(int i = 0; i < result.length; i ++)
+        {
+            result[i] = slots.get(i);
+        }
+        return result;
     }
 
     @Override
@@ -273,7 +530,15 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
         {
             Lox.error(expr.keyword, "Cannot use 'this' inside a static method.");
         }
-        resolveLocal(expr, expr.keyword);
+        Scope scope = scopeOf(expr.keyword);
+        if(scope == null) return null;
+        LocalVar local = scope.names.get(expr.keyword.lexeme);
+        if(scope.function == currFrame)
+        {
+            expr.slot = local.slot;
+            local.uses.add(expr);
+        }
+        else expr.upvalue = upvalue(currFrame, local, scope.function);
         return null;
     }
 
@@ -287,6 +552,13 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
     @Override
     public Void visitCallExpr(Expr.Call expr) {
       resolve(expr.calee);
+      if(expr.calee instanceof Expr.Variable) //a call through a plain name may get bound to what the name holds, see bindCalls()
+      {
+        Token name = ((Expr.Variable)expr.calee).name;
+        Scope scope = scopeOf(name);
+        if(scope == null) globalName(name.lexeme).calls.add(expr);
+        else scope.names.get(name.lexeme).calls.add(expr);
+      }
 
       for (Expr argument : expr.arguments) {
         resolve(argument);
@@ -367,7 +639,13 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
         {
             Lox.error(expr.keyword, "Cannot use 'super' in a static method."); //We stick to java style where super cannot be used in a static context.
         }
-        resolveLocal(expr, expr.keyword);
+        else
+        {
+            Scope scope = scopeOf(expr.keyword);
+            expr.upvalue = upvalue(currFrame, scope.names.get("super"), scope.function);
+            expr.self = new Expr.This(new Token(TokenType.THIS, "this", null, expr.keyword.line));
+            visitThisExpr(expr.self); //the receiver the method gets bound to
+        }
         return null;
     }
 
@@ -381,13 +659,26 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
         return null;
     }
 
+    @Override
+    public Void visitInlineExpr(Expr.Inline expr) //only the Optimizer makes these, after resolution
+    {
+        resolve(expr.call);
+        return null;
+    }
+
     private void resolveFunction(Expr.AnonymousFunction function) {
-        beginScope();
+        beginFrame();
+        Scope scope = new Scope(currFrame);
+        scopes.push(scope);
         for (Token param : function.parameters) {
-          declare(param);
+          declare(param, null);
           define(param);
         }
         resolve(function.body);
+        function.cellParams = cellParams(scope, false, function.parameters);
         endScope();
+        FunctionState frame = endFrame();
+        function.slotCount = frame.slotCount;
+        function.captures = frame.captures();
     }
 }
@@ -1,57 +1,28 @@
 package lox;
 
-import java.util.List;
-import java.util.ArrayList;
-import java.util.Map;
-import java.util.HashMap;
-
 import static lox.TokenType.*; 
 
 class Scanner {
     private final String source;
-    private final List<Token> tokens = new ArrayList<>();
+    private final TokenBuffer tokens;
     private int start = 0;
     private int current = 0;
     private int line = 1;
 
-    private static final Map<String, TokenType> keywords;
-
-    static {
-        keywords = new HashMap<>();
-        keywords.put("and",    AND);
-        keywords.put("class",  CLASS);
-        keywords.put("else",   ELSE);
-        keywords.put("false",  FALSE);
-        keywords.put("for",    FOR);
-        keywords.put("fun",    FUN);
-        keywords.put("if",     IF);
-        keywords.put("nil",    NIL);
-        keywords.put("or",     OR);
-        keywords.put("print",  PRINT);
-        keywords.put("return", RETURN);
-        keywords.put("super",  SUPER);
-        keywords.put("this",   THIS);
-        keywords.put("true",   TRUE);
-        keywords.put("var",    VAR);
-        keywords.put("while",  WHILE);
-        keywords.put("break" , BREAK);
-        keywords.put("static", STATIC);
-        keywords.put("lambda", LAMBDA);
-    }
-
     Scanner(String source)
     {
         this.source = source;
+        this.tokens = new TokenBuffer(source);
     }
 
-    List<Token> scanTokens() {
+    TokenBuffer scanTokens() {
         while (!isAtEnd()) {
           // We are at the beginning of the next lexeme.
           start = current;
           scanToken();
         }
     
-        tokens.add(new Token(EOF, "", null, line));
+        tokens.add(EOF, current, 0, line);
         return tokens;
     }
 
@@ -132,10 +103,7 @@ class Scanner {
                 {
                     while(isAlphaNumeric(peek(0))) advance();
                     
-                    String text = source.substring(start, current);
-                    TokenType type = keywords.get(text);
-                    if (type == null) type = IDENTIFIER;
-                    addToken(type);
+                    addToken(identifierType());
 
                 }
                 else
@@ -167,6 +135,64 @@ class Scanner {
         addToken(STRING, val);
     }
 
+    //the keyword the identifier just scanned spells, or IDENTIFIER. Compared right in the source, so no String is made for the lookup
+    private TokenType identifierType()
+    {
+        switch(source.charAt(start))
+        {
+            case 'a': return keyword("and", AND);
+            case 'b': return keyword("break", BREAK);
+            case 'c': return keyword("class", CLASS);
+            case 'e': return keyword("else", ELSE);
+            case 'f':
+                if(current - start > 1)
+                {
+                    switch(source.charAt(start + 1))
+                    {
+                        case 'a': return keyword("false", FALSE);
+                        case 'o': return keyword("for", FOR);
+                        case 'u': return keyword("fun", FUN);
+                    }
+                }
+                break;
+            case 'i': return keyword("if", IF);
+            case 'l': return keyword("lambda", LAMBDA);
+            case 'n': return keyword("nil", NIL);
+            case 'o': return keyword("or", OR);
+            case 'p': return keyword("print", PRINT);
+            case 'r': return keyword("return", RETURN);
+            case 's':
+                if(current - start > 1)
+                {
+                    switch(source.charAt(start + 1))
+                    {
+                        case 'u': return keyword("super", SUPER);
+                        case 't': return keyword("static", STATIC);
+                    }
+                }
+                break;
+            case 't':
+                if(current - start > 1)
+                {
+                    switch(source.charAt(start + 1))
+                    {
+                        case 'h': return keyword("this", THIS);
+                        case 'r': return keyword("true", TRUE);
+                    }
+                }
+                break;
+            case 'v': return keyword("var", VAR);
+            case 'w': return keyword("while", WHILE);
+        }
+        return IDENTIFIER;
+    }
+
+    private TokenType keyword(String word, TokenType type)
+    {
+        if(current - start == word.length() && source.startsWith(word, start)) return type;
+        return IDENTIFIER;
+    }
+
     private void number()
     {
         while(isDigit(peek(0))) advance();
@@ -177,6 +203,16 @@ class Scanner {
             advance();
             while(isDigit(peek(0))) advance();
         }
+        else if(current - start <= 15) //an integer literal becomes a Long, as long as it is surely below 2^53
+        {
+            long value = 0;
+            for(int i = start; i < current; i ++)
+            {
+                value = value * 10 + (source.charAt(i) - '0');
+            }
+            addToken(NUMBER, value);
+            return;
+        }
 
         addToken(NUMBER, Double.parseDouble(source.substring(start, current)));
 
@@ -203,12 +239,11 @@ class Scanner {
     }
     
     private void addToken(TokenType type) {
-        addToken(type, null);
+        tokens.add(type, start, current - start, line);
     }
-    
+
     private void addToken(TokenType type, Object literal) {
-        String text = source.substring(start, current);
-        tokens.add(new Token(type, text, literal, line));
+        tokens.add(type, start, current - start, line, literal);
     }
 
     private boolean isAtEnd()
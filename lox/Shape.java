@@ -0,0 +1,47 @@
+package lox;
+
+import java.util.HashMap;
+import java.util.Map;
+
+//the layout of an instance's fields (a "hidden class") : which field name lives at which index of LoxInstance.values.
+//Shapes never change. Adding a field moves the instance to the next shape along a transition, and instances that get the same fields
+//in the same order end up sharing one shape, so the layout is stored once per class instead of once per object.
+
+final class Shape {
+    static final Shape ROOT = new Shape(); //for instances without a LoxClass, the classes themselves and arrays
+
+    private final Map<String, Integer> slots; //field name to index, including the fields of every shape before this one
+    private Map<String, Shape> transitions = null; //shapes reached by adding one more field, created on demand
+    final int size;
+
+    Shape()
+    {
+        this.slots = new HashMap<>();
+        this.size = 0;
+    }
+
+    private Shape(Shape parent, String name)
+    {
+        this.slots = new HashMap<>(parent.slots);
+        this.slots.put(name, parent.size);
+        this.size = parent.size + 1;
+    }
+
+    int indexOf(String name) //-1 if instances of this shape dont have the field
+    {
+        Integer slot = slots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    Shape with(String name)
+    {
+        if(transitions == null) transitions = new HashMap<>();
+        Shape next = transitions.get(name);
+        if(next == null)
+        {
+            next = new Shape(this, name);
+            transitions.put(name, next);
+        }
+        return next;
+    }
+}
@@ -11,6 +11,7 @@ abstract class Stmt {
     R visitVarStmt(Var stmt);
     R visitClassStmt(Class stmt);
     R visitWhileStmt(While stmt);
+    R visitForStmt(For stmt);
     R visitBreakStmt(Break stmt);
     R visitFunctionStmt(Function stmt);
     R visitReturnStmt(Return stmt);
@@ -26,6 +27,7 @@ abstract class Stmt {
     }
 
     final List<Stmt> Statements;
+    int slotCount = 0;
   }
   static class Expression extends Stmt {
     Expression(Expr expression) {
@@ -37,7 +39,7 @@ abstract class Stmt {
       return visitor.visitExpressionStmt(this);
     }
 
-    final Expr expression;
+    Expr expression;
   }
   static class If extends Stmt {
     If(Expr condition, Stmt trueBranch, Stmt falseBranch) {
@@ -51,9 +53,9 @@ abstract class Stmt {
       return visitor.visitIfStmt(this);
     }
 
-    final Expr condition;
-    final Stmt trueBranch;
-    final Stmt falseBranch;
+    Expr condition;
+    Stmt trueBranch;
+    Stmt falseBranch;
   }
   static class Print extends Stmt {
     Print(Expr expression) {
@@ -65,7 +67,7 @@ abstract class Stmt {
       return visitor.visitPrintStmt(this);
     }
 
-    final Expr expression;
+    Expr expression;
   }
   static class Var extends Stmt {
     Var(Token name, Expr intializer) {
@@ -79,7 +81,10 @@ abstract class Stmt {
     }
 
     final Token name;
-    final Expr intializer;
+    Expr intializer;
+    int slot = -1;
+    boolean cell = false;
+    boolean number = false;
   }
   static class Class extends Stmt {
     Class(Token name , Expr.Variable superclass, List<Stmt.Function> methods, List<Stmt.Function> staticmethods) {
@@ -98,9 +103,13 @@ abstract class Stmt {
     final Expr.Variable superclass;
     final List<Stmt.Function> methods;
     final List<Stmt.Function> staticmethods;
+    int slot = -1;
+    boolean cell = false;
+    int[] captures = null;
   }
   static class While extends Stmt {
-    While(Expr condition, Stmt body) {
+    While(Token keyword, Expr condition, Stmt body) {
+      this.keyword = keyword;
       this.condition = condition;
       this.body = body;
     }
@@ -110,8 +119,34 @@ abstract class Stmt {
       return visitor.visitWhileStmt(this);
     }
 
-    final Expr condition;
-    final Stmt body;
+    final Token keyword;
+    Expr condition;
+    Stmt body;
+    int backEdges = 0;
+    JitLoop jitted = null;
+  }
+  static class For extends Stmt {
+    For(Token keyword, Stmt initializer, Expr condition, Expr increment, Stmt body) {
+      this.keyword = keyword;
+      this.initializer = initializer;
+      this.condition = condition;
+      this.increment = increment;
+      this.body = body;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitForStmt(this);
+    }
+
+    final Token keyword;
+    Stmt initializer;
+    Expr condition;
+    Expr increment;
+    Stmt body;
+    int slotCount = 0;
+    int backEdges = 0;
+    JitLoop jitted = null;
   }
   static class Break extends Stmt {
     Break(Token breakToken) {
@@ -140,6 +175,14 @@ abstract class Stmt {
     final Token name;
     final List<Token> parameters;
     final List<Stmt> body;
+    int slot = -1;
+    boolean cell = false;
+    int slotCount = 0;
+    int paramStart = 0;
+    int[] cellParams = null;
+    int[] captures = null;
+    int calls = 0;
+    JitCode jitted = null;
   }
   static class Return extends Stmt {
     Return(Token keyword, Expr value) {
@@ -153,7 +196,7 @@ abstract class Stmt {
     }
 
     final Token keyword;
-    final Expr value;
+    Expr value;
   }
 
   abstract <R> R accept(Visitor<R> visitor);
@@ -0,0 +1,323 @@
+package lox;
+
+import java.util.HashMap;
+import java.util.Map;
+
+//executable statement nodes built by NodeCompiler.
+//Instead of throwing Break/Return, execute() hands back how the statement completed and loops/functions check it.
+
+abstract class StmtNode {
+    static final int NORMAL = 0;
+    static final int BREAK = 1;
+    static final int RETURN = 2;
+
+    static Object returnValue; //value of the last 'return', read by the function that sees RETURN come back
+
+    abstract int execute(Environment frame);
+
+    static int executeAll(StmtNode[] statements, Environment frame)
+    {
+        for(StmtNode statement : statements)
+        {
+            int completion = statement.execute(frame);
+            if(completion != NORMAL) return completion;
+        }
+        return NORMAL;
+    }
+
+    static final class Expression extends StmtNode {
+        final ExprNode expression;
+
+        Expression(ExprNode expression)
+        {
+            this.expression = expression;
+        }
+
+        @Override
+        int execute(Environment frame)
+        {
+            expression.execute(frame);
+            return NORMAL;
+        }
+    }
+
+    static final class Echo extends StmtNode { //an expression statement the REPL prints, decided once at compile time
+        final ExprNode expression;
+
+        Echo(ExprNode expression)
+        {
+            this.expression = expression;
+        }
+
+        @Override
+        int execute(Environment frame)
+        {
+            System.out.println(Interpreter.stringify(expression.execute(frame)));
+            return NORMAL;
+        }
+    }
+
+    static final class Print extends StmtNode {
+        final ExprNode expression;
+
+        Print(ExprNode expression)
+        {
+            this.expression = expression;
+        }
+
+        @Override
+        int execute(Environment frame)
+        {
+            System.out.println(Interpreter.stringify(expression.execute(frame)));
+            return NORMAL;
+        }
+    }
+
+    static final class DefineLocal extends StmtNode {
+        final int slot;
+        final ExprNode value; //null when the variable has no initializer
+
+        DefineLocal(int slot, ExprNode value)
+        {
+            this.slot = slot;
+            this.value = value;
+        }
+
+        @Override
+        int execute(Environment frame)
+        {
+            frame.slots[slot] = value == null ? null : value.execute(frame);
+            return NORMAL;
+        }
+    }
+
+    static final class DefineCell extends StmtNode { //a captured local, its Cell exists before the initializer runs like in the Interpreter
+        final int slot;
+        final ExprNode value;
+
+        DefineCell(int slot, ExprNode value)
+        {
+            this.slot = slot;
+            this.value = value;
+        }
+
+        @Override
+        int execute(Environment frame)
+        {
+            Cell cell = new Cell(null);
+            frame.slots[slot] = cell;
+            if(value != null) cell.value = value.execute(frame);
+            return NORMAL;
+        }
+    }
+
+    static final class DefineGlobal extends StmtNode {
+        final String name;
+        final ExprNode value;
+
+        DefineGlobal(String name, ExprNode value)
+        {
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override
+        int execute(Environment frame)
+        {
+            frame.define(name, value == null ? null : value.execute(frame));
+            return NORMAL;
+        }
+    }
+
+    static final class Block extends StmtNode {
+        final StmtNode[] statements;
+        final int slotCount;
+
+        Block(StmtNode[] statements, int slotCount)
+        {
+            this.statements = statements;
+            this.slotCount = slotCount;
+        }
+
+        @Override
+        int execute(Environment frame)
+        {
+            if(slotCount == 0) return executeAll(statements, frame); //its variables live in the function's frame, see Resolver
+            return executeAll(statements, new Environment(Environment.NO_UPVALUES, slotCount)); //a top level block
+        }
+    }
+
+    static final class If extends StmtNode {
+        final ExprNode condition;
+        final StmtNode trueBranch;
+        final StmtNode falseBranch;
+
+        If(ExprNode condition, StmtNode trueBranch, StmtNode falseBranch)
+        {
+            this.condition = condition;
+            this.trueBranch = trueBranch;
+            this.falseBranch = falseBranch;
+        }
+
+        @Override
+        int execute(Environment frame)
+        {
+            if(Interpreter.isTruthy(condition.execute(frame))) return trueBranch.execute(frame);
+            if(falseBranch != null) return falseBranch.execute(frame);
+            return NORMAL;
+        }
+    }
+
+    static final class While extends StmtNode {
+        final ExprNode condition;
+        final StmtNode body;
+
+        While(ExprNode condition, StmtNode body)
+        {
+            this.condition = condition;
+            this.body = body;
+        }
+
+        @Override
+        int execute(Environment frame)
+        {
+            while(Interpreter.isTruthy(condition.execute(frame)))
+            {
+                int completion = body.execute(frame);
+                if(completion == BREAK) break;
+                if(completion == RETURN) return RETURN;
+            }
+            return NORMAL;
+        }
+    }
+
+    static final class For extends StmtNode {
+        final StmtNode initializer; //null when missing, like increment
+        final ExprNode condition;
+        final ExprNode increment;
+        final StmtNode body;
+        final int slotCount;
+
+        For(StmtNode initializer, ExprNode condition, ExprNode increment, StmtNode body, int slotCount)
+        {
+            this.initializer = initializer;
+            this.condition = condition;
+            this.increment = increment;
+            this.body = body;
+            this.slotCount = slotCount;
+        }
+
+        @Override
+        int execute(Environment frame)
+        {
+            if(slotCount != 0) frame = new Environment(Environment.NO_UPVALUES, slotCount); //a top level loop, see Block
+            if(initializer != null) initializer.execute(frame);
+            while(Interpreter.isTruthy(condition.execute(frame)))
+            {
+                int completion = body.execute(frame);
+                if(completion == BREAK) break;
+                if(completion == RETURN) return RETURN;
+                if(increment != null) increment.execute(frame);
+            }
+            return NORMAL;
+        }
+    }
+
+    static final class Break extends StmtNode {
+        @Override
+        int execute(Environment frame)
+        {
+            return BREAK;
+        }
+    }
+
+    static final class Return extends StmtNode {
+        final ExprNode value;
+
+        Return(ExprNode value)
+        {
+            this.value = value;
+        }
+
+        @Override
+        int execute(Environment frame)
+        {
+            returnValue = value == null ? null : value.execute(frame);
+            return RETURN;
+        }
+    }
+
+    static final class Function extends StmtNode {
+        final Stmt.Function declaration;
+        final StmtNode[] body;
+
+        Function(Stmt.Function declaration, StmtNode[] body)
+        {
+            this.declaration = declaration;
+            this.body = body;
+        }
+
+        @Override
+        int execute(Environment frame)
+        {
+            Cell cell = declaration.cell ? new Cell(null) : null;
+            if(cell != null) frame.slots[declaration.slot] = cell; //before capturing, a local function that calls itself captures its own Cell
+            NodeFunction function = new NodeFunction(declaration, frame.capture(declaration.captures), body);
+            if(cell != null) cell.value = function;
+            else if(declaration.slot == -1) frame.define(declaration.name.lexeme, function);
+            else frame.slots[declaration.slot] = function;
+            return NORMAL;
+        }
+    }
+
+    static final class Class extends StmtNode {
+        final Stmt.Class declaration;
+        final ExprNode superclass; //null when the class has no superclass
+        final Function[] methods;
+        final Function[] staticMethods;
+
+        Class(Stmt.Class declaration, ExprNode superclass, Function[] methods, Function[] staticMethods)
+        {
+            this.declaration = declaration;
+            this.superclass = superclass;
+            this.methods = methods;
+            this.staticMethods = staticMethods;
+        }
+
+        @Override
+        int execute(Environment frame)
+        {
+            Cell cell = declaration.cell ? new Cell(null) : null;
+            if(cell != null) frame.slots[declaration.slot] = cell;
+            Object superklass = null;
+            Environment closure = frame;
+            if(superclass != null)
+            {
+                superklass = superclass.execute(frame);
+                if(!(superklass instanceof LoxClass))
+                {
+                    throw new RuntimeError(declaration.superclass.name, "A class can only inherit from another class.(Superclass must be a class)");
+                }
+                closure = new Environment(frame.capture(declaration.captures), 1); //for handling super, same layout as the Interpreter
+                closure.define(0, new Cell(superklass));
+            }
+
+            Map<String, LoxFunction> methodMap = new HashMap<>();
+            for(Function method : methods)
+            {
+                methodMap.put(method.declaration.name.lexeme, new NodeFunction(method.declaration, closure.capture(method.declaration.captures), method.body));
+            }
+            Map<String, LoxFunction> staticMap = new HashMap<>();
+            for(Function method : staticMethods)
+            {
+                staticMap.put(method.declaration.name.lexeme, new NodeFunction(method.declaration, closure.capture(method.declaration.captures), method.body));
+            }
+
+            LoxClass klass = new LoxClass(declaration.name.lexeme, (LoxClass)superklass, methodMap, staticMap);
+            if(cell != null) cell.value = klass;
+            else if(declaration.slot == -1) frame.define(declaration.name.lexeme, klass);
+            else frame.slots[declaration.slot] = klass;
+            return NORMAL;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package lox;
+
+import java.util.Arrays;
+
+//what the Scanner produces : every token as one entry in parallel arrays (type, where it starts in the source, how long it is, its line)
+//instead of a Token object with a lexeme String of its own. Only numbers and strings have a literal, those sit in a small side table.
+//The Parser asks for a real Token only where the AST keeps one (names, operators, keywords used for errors), so nothing else is ever allocated.
+
+final class TokenBuffer {
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final String source;
+    private byte[] types = new byte[256]; //TokenType ordinals
+    private int[] starts = new int[256];
+    private int[] lengths = new int[256];
+    private int[] lines = new int[256];
+    private int count = 0;
+
+    private int[] literalTokens = new int[16]; //the tokens that have a literal, in order, and their literals
+    private Object[] literals = new Object[16];
+    private int literalCount = 0;
+
+    TokenBuffer(String source)
+    {
+        this.source = source;
+    }
+
+    void add(TokenType type, int start, int length, int line)
+    {
+        if(count == types.length)
+        {
+            types = Arrays.copyOf(types, count * 2);
+            starts = Arrays.copyOf(starts, count * 2);
+            lengths = Arrays.copyOf(lengths, count * 2);
+            lines = Arrays.copyOf(lines, count * 2);
+        }
+        types[count] = (byte)type.ordinal();
+        starts[count] = start;
+        lengths[count] = length;
+        lines[count] = line;
+        count++;
+    }
+
+    void add(TokenType type, int start, int length, int line, Object literal)
+    {
+        if(literalCount == literals.length)
+        {
+            literalTokens = Arrays.copyOf(literalTokens, literalCount * 2);
+            literals = Arrays.copyOf(literals, literalCount * 2);
+        }
+        literalTokens[literalCount] = count;
+        literals[literalCount] = literal;
+        literalCount++;
+        add(type, start, length, line);
+    }
+
+    int size()
+    {
+        return count;
+    }
+
+    TokenType type(int index)
+    {
+        return TYPES[types[index]];
+    }
+
+    int line(int index)
+    {
+        return lines[index];
+    }
+
+    Object literal(int index) //null for every token but numbers and strings
+    {
+        int found = Arrays.binarySearch(literalTokens, 0, literalCount, index);
+        return found >= 0 ? literals[found] : null;
+    }
+
+    String lexeme(int index)
+    {
+        return source.substring(starts[index], starts[index] + lengths[index]);
+    }
+
+    Token token(int index) //the Token the AST keeps, made on demand
+    {
+        return new Token(type(index), lexeme(index), literal(index), lines[index]);
+    }
+}
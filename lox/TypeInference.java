@@ -0,0 +1,359 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+//runs after the Resolver and proves which locals only ever hold numbers, one frame (function, lambda or the top level) at a time.
+//A slot is a candidate when every declaration in it is a plain var nothing captures. It stays one as long as every value written into it
+//(initializers and assignments) is numeric, assuming the other candidates are numbers too, so 'i = i + 1' does not rule 'i' out.
+//Parameters are never candidates, their type is up to the caller.
+//The flags it sets let the Interpreter evaluate those expressions through evaluateDouble() and keep the proven locals in Environment.numbers,
+//so nothing is boxed until the value is used as an Object.
+
+class TypeInference implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private Map<Integer, List<Expr>> writes; //values written into each slot, null for a var without initializer
+    private Set<Integer> declared; //slots a var declares, the only candidates
+    private Set<Integer> blocked; //slots that also hold something else : captured variables, functions and classes
+    private Set<Integer> numbers; //the proven slots once the frame is solved, null while still collecting
+    private List<Object> nested; //functions and lambdas found in the frame, each one solved after it
+
+    void infer(List<Stmt> statements)
+    {
+        frame(statements);
+    }
+
+    private void frame(List<Stmt> body)
+    {
+        writes = new HashMap<>();
+        declared = new HashSet<>();
+        blocked = new HashSet<>();
+        numbers = null;
+        nested = new ArrayList<>();
+        resolve(body); //collect
+
+        Set<Integer> proven = new HashSet<>(declared);
+        proven.removeAll(blocked);
+        boolean changed = true;
+        while(changed)
+        {
+            changed = false;
+            Iterator<Integer> it = proven.iterator();
+            while(it.hasNext())
+            {
+                for(Expr value : writes.get(it.next()))
+                {
+                    if(value == null || !numeric(value, proven))
+                    {
+                        it.remove();
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+        numbers = proven;
+        resolve(body); //mark
+
+        List<Object> functions = nested; //the next frame() call starts over, nothing of this frame is needed any more
+        for(Object function : functions)
+        {
+            if(function instanceof Stmt.Function) frame(((Stmt.Function)function).body);
+            else frame(((Expr.AnonymousFunction)function).body);
+        }
+    }
+
+    private static boolean numeric(Expr expr, Set<Integer> numbers)
+    {
+        if(expr instanceof Expr.Literal) return Numbers.isNumber(((Expr.Literal)expr).value);
+        if(expr instanceof Expr.Grouping) return numeric(((Expr.Grouping)expr).expression, numbers);
+        if(expr instanceof Expr.Variable)
+        {
+            Expr.Variable variable = (Expr.Variable)expr;
+            return variable.slot != -1 && !variable.cell && numbers.contains(variable.slot);
+        }
+        if(expr instanceof Expr.Assign)
+        {
+            Expr.Assign assign = (Expr.Assign)expr;
+            return assign.slot != -1 && !assign.cell && numbers.contains(assign.slot) && numeric(assign.value, numbers);
+        }
+        if(expr instanceof Expr.Unary)
+        {
+            Expr.Unary unary = (Expr.Unary)expr;
+            return unary.operator.type == TokenType.MINUS && numeric(unary.right, numbers);
+        }
+        if(expr instanceof Expr.Binary)
+        {
+            Expr.Binary binary = (Expr.Binary)expr;
+            return arithmetic(binary.operator.type) && numeric(binary.left, numbers) && numeric(binary.right, numbers);
+        }
+        if(expr instanceof Expr.Ternary)
+        {
+            Expr.Ternary ternary = (Expr.Ternary)expr;
+            return numeric(ternary.TrueBranch, numbers) && numeric(ternary.FalseBranch, numbers);
+        }
+        return false; //calls, property gets, globals, upvalues and everything else can be anything
+    }
+
+    private static boolean arithmetic(TokenType type)
+    {
+        return type == TokenType.PLUS || type == TokenType.MINUS || type == TokenType.STAR || type == TokenType.SLASH;
+    }
+
+    private void resolve(List<Stmt> statements)
+    {
+        for(Stmt statement : statements)
+        {
+            statement.accept(this);
+        }
+    }
+
+    private void resolve(Expr expr)
+    {
+        expr.accept(this);
+    }
+
+    private void write(int slot, boolean cell, Expr value)
+    {
+        if(slot == -1) return;
+        if(cell) blocked.add(slot);
+        else writes.computeIfAbsent(slot, k -> new ArrayList<>()).add(value);
+    }
+
+    //---------------------------------------------------------------- statements
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt)
+    {
+        resolve(stmt.Statements);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt)
+    {
+        resolve(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt)
+    {
+        resolve(stmt.condition);
+        stmt.trueBranch.accept(this);
+        if(stmt.falseBranch != null) stmt.falseBranch.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt)
+    {
+        resolve(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt)
+    {
+        if(stmt.intializer != null) resolve(stmt.intializer);
+        if(numbers == null)
+        {
+            write(stmt.slot, stmt.cell, stmt.intializer);
+            if(stmt.slot != -1) declared.add(stmt.slot);
+        }
+        else stmt.number = stmt.slot != -1 && numbers.contains(stmt.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt)
+    {
+        if(stmt.superclass != null) resolve(stmt.superclass);
+        if(numbers != null) return null;
+
+        if(stmt.slot != -1) blocked.add(stmt.slot);
+        nested.addAll(stmt.methods);
+        nested.addAll(stmt.staticmethods);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt)
+    {
+        resolve(stmt.condition);
+        stmt.body.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(Stmt.For stmt)
+    {
+        if(stmt.initializer != null) stmt.initializer.accept(this);
+        resolve(stmt.condition);
+        if(stmt.increment != null) resolve(stmt.increment);
+        stmt.body.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt)
+    {
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt)
+    {
+        if(numbers != null) return null;
+
+        if(stmt.slot != -1) blocked.add(stmt.slot);
+        nested.add(stmt);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt)
+    {
+        if(stmt.value != null) resolve(stmt.value);
+        return null;
+    }
+
+    //---------------------------------------------------------------- expressions
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr)
+    {
+        resolve(expr.value);
+        if(numbers == null) write(expr.slot, expr.cell, expr.value);
+        else expr.number = numeric(expr, numbers);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr)
+    {
+        resolve(expr.left);
+        resolve(expr.right);
+        if(numbers != null) expr.numberOperands = numeric(expr.left, numbers) && numeric(expr.right, numbers);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr)
+    {
+        resolve(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr)
+    {
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr)
+    {
+        resolve(expr.left);
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr)
+    {
+        resolve(expr.right);
+        if(numbers != null) expr.number = numeric(expr, numbers);
+        return null;
+    }
+
+    @Override
+    public Void visitTernaryExpr(Expr.Ternary expr)
+    {
+        resolve(expr.Condition);
+        resolve(expr.TrueBranch);
+        resolve(expr.FalseBranch);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr)
+    {
+        if(numbers != null) expr.number = numeric(expr, numbers);
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr)
+    {
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Expr.Super expr)
+    {
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr)
+    {
+        resolve(expr.calee);
+        for(Expr argument : expr.arguments)
+        {
+            resolve(argument);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr)
+    {
+        resolve(expr.object);
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr)
+    {
+        resolve(expr.object);
+        resolve(expr.value);
+        return null;
+    }
+
+    @Override
+    public Void visitAnonymousFunctionExpr(Expr.AnonymousFunction expr)
+    {
+        if(numbers == null) nested.add(expr);
+        return null;
+    }
+
+    @Override
+    public Void visitInlineExpr(Expr.Inline expr)
+    {
+        if(numbers == null)
+        {
+            for(int i = 0; i < expr.call.arguments.size(); i ++)
+            {
+                blocked.add(expr.slot + i); //the arguments can be anything. Top level blocks and loops all count as one frame here, so the slot may be declared elsewhere
+            }
+        }
+        resolve(expr.call);
+        resolve(expr.body);
+        return null;
+    }
+
+    @Override
+    public Void visitArrayExpr(Expr.Array expr)
+    {
+        for(Expr element : expr.elements)
+        {
+            resolve(element);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,13 @@
+package lox;
+
+//thrown by ExprNode.executeDouble() / executeLong() when the value turned out not to be a number (or not an integer), carrying the value so the caller can carry on generically.
+public class UnexpectedResult extends Exception
+{
+    final Object result;
+
+    UnexpectedResult(Object result)
+    {
+        super(null, null, false, false); //no stack trace, it is only used to hand the value back
+        this.result = result;
+    }
+}
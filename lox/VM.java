@@ -0,0 +1,721 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//stack based virtual machine that runs the bytecode produced by BytecodeCompiler.
+//Every call gets a CallFrame whose locals live on the shared value stack starting at 'base', slot 0 being the callee (or 'this').
+
+class VM {
+    private static final int FRAMES_MAX = 100000;
+    private static final Object UNDEFINED = new Object(); //value of a global that has been compiled but not defined yet
+
+    private static class CallFrame
+    {
+        VmClosure closure;
+        int ip;
+        int base;
+        boolean constructor; //the frame runs 'init' for a class call, so it returns the new instance
+    }
+
+    private Object[] stack = new Object[1024];
+    private int sp = 0;
+    private CallFrame[] frames = new CallFrame[64];
+    private int frameCount = 0;
+    private VmUpvalue openUpvalues = null;
+
+    private final Map<String, Integer> globalSlots = new HashMap<>();
+    private String[] globalNames = new String[64];
+    private Object[] globals = new Object[64];
+    private int globalCount = 0;
+
+    VM()
+    {
+        globals[globalSlot("clock")] = new LoxCallable() {
+            @Override
+            public int arity()
+            {
+                return 0;
+            }
+
+            @Override
+            public Object call(Interpreter interpreter, List<Object> arguments)
+            {
+                return call0(interpreter);
+            }
+
+            @Override
+            public Object call0(Interpreter interpreter)
+            {
+                return (double)System.currentTimeMillis() / 1000.0;
+            }
+
+            @Override
+            public String toString()
+            {
+                return "<native fn>";
+            }
+        };
+    }
+
+    int globalSlot(String name) //globals are interned once at compile time, so the REPL keeps seeing earlier definitions
+    {
+        Integer slot = globalSlots.get(name);
+        if(slot != null) return slot;
+
+        if(globalCount == globals.length)
+        {
+            globals = Arrays.copyOf(globals, globalCount * 2);
+            globalNames = Arrays.copyOf(globalNames, globalCount * 2);
+        }
+        globals[globalCount] = UNDEFINED;
+        globalNames[globalCount] = name;
+        globalSlots.put(name, globalCount);
+        return globalCount++;
+    }
+
+    String[] globalNames() //in slot order, so a VM that interns them again in this order hands out the same slots
+    {
+        return Arrays.copyOf(globalNames, globalCount);
+    }
+
+    void interpret(List<Stmt> statements, boolean repl_mode)
+    {
+        VmFunction script = new BytecodeCompiler(this).compile(statements, repl_mode);
+        if(Lox.hadError) return;
+        interpret(script);
+    }
+
+    void interpret(VmFunction script) //also the entry point for programs jloxc compiled ahead of time
+    {
+        VmClosure closure = new VmClosure(script);
+        try
+        {
+            stack[sp++] = closure;
+            call(closure, 0, false);
+            run();
+        }
+        catch(RuntimeError err)
+        {
+            Lox.runtimeError(err);
+        }
+        catch(NativeError err)
+        {
+            Lox.NativeError(err);
+        }
+        finally
+        {
+            Arrays.fill(stack, 0, sp, null);
+            sp = 0;
+            frameCount = 0;
+            openUpvalues = null;
+        }
+    }
+
+    private void run()
+    {
+        CallFrame frame = frames[frameCount - 1];
+        byte[] code = frame.closure.function.chunk.code;
+        Object[] constants = frame.closure.function.chunk.constants;
+        int ip = frame.ip;
+        int base = frame.base;
+
+        try
+        {
+            for(;;)
+            {
+                switch(code[ip++])
+                {
+                    case OpCode.CONSTANT:
+                        stack[sp++] = constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                        ip += 2;
+                        break;
+                    case OpCode.NIL: stack[sp++] = null; break;
+                    case OpCode.TRUE: stack[sp++] = true; break;
+                    case OpCode.FALSE: stack[sp++] = false; break;
+                    case OpCode.POP: stack[--sp] = null; break;
+
+                    case OpCode.GET_LOCAL:
+                        stack[sp++] = stack[base + (code[ip++] & 0xff)];
+                        break;
+                    case OpCode.SET_LOCAL:
+                        stack[base + (code[ip++] & 0xff)] = stack[sp - 1];
+                        break;
+                    case OpCode.GET_LOCAL_WIDE:
+                        stack[sp++] = stack[base + (((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff))];
+                        ip += 2;
+                        break;
+                    case OpCode.SET_LOCAL_WIDE:
+                        stack[base + (((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff))] = stack[sp - 1];
+                        ip += 2;
+                        break;
+
+                    case OpCode.GET_GLOBAL:
+                    {
+                        int slot = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                        ip += 2;
+                        Object value = globals[slot];
+                        if(value == UNDEFINED) throw error("Undefined variable '" + globalNames[slot] + "'.");
+                        stack[sp++] = value;
+                        break;
+                    }
+                    case OpCode.DEFINE_GLOBAL:
+                        globals[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)] = stack[--sp];
+                        stack[sp] = null;
+                        ip += 2;
+                        break;
+                    case OpCode.SET_GLOBAL:
+                    {
+                        int slot = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                        ip += 2;
+                        if(globals[slot] == UNDEFINED) throw error("Undefined varibale '" + globalNames[slot] + "'.");
+                        globals[slot] = stack[sp - 1];
+                        break;
+                    }
+
+                    case OpCode.GET_UPVALUE:
+                    {
+                        VmUpvalue upvalue = frame.closure.upvalues[code[ip++] & 0xff];
+                        stack[sp++] = upvalue.slot >= 0 ? stack[upvalue.slot] : upvalue.closed;
+                        break;
+                    }
+                    case OpCode.SET_UPVALUE:
+                    {
+                        VmUpvalue upvalue = frame.closure.upvalues[code[ip++] & 0xff];
+                        if(upvalue.slot >= 0) stack[upvalue.slot] = stack[sp - 1];
+                        else upvalue.closed = stack[sp - 1];
+                        break;
+                    }
+                    case OpCode.GET_UPVALUE_WIDE:
+                    {
+                        VmUpvalue upvalue = frame.closure.upvalues[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                        ip += 2;
+                        stack[sp++] = upvalue.slot >= 0 ? stack[upvalue.slot] : upvalue.closed;
+                        break;
+                    }
+                    case OpCode.SET_UPVALUE_WIDE:
+                    {
+                        VmUpvalue upvalue = frame.closure.upvalues[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                        ip += 2;
+                        if(upvalue.slot >= 0) stack[upvalue.slot] = stack[sp - 1];
+                        else upvalue.closed = stack[sp - 1];
+                        break;
+                    }
+
+                    case OpCode.GET_PROPERTY:
+                    {
+                        String name = (String)constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                        ip += 2;
+                        stack[sp - 1] = getProperty(stack[sp - 1], name);
+                        break;
+                    }
+                    case OpCode.SET_PROPERTY:
+                    {
+                        String name = (String)constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                        ip += 2;
+                        Object value = stack[--sp];
+                        Object object = stack[sp - 1];
+                        if(object instanceof VmInstance) ((VmInstance)object).fields.put(name, value);
+                        else if(!(object instanceof VmClass) && !(object instanceof LoxArray)) throw error("Only instances have fields.");
+                        stack[sp - 1] = value;
+                        stack[sp] = null;
+                        break;
+                    }
+                    case OpCode.GET_SUPER:
+                    {
+                        String name = (String)constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                        ip += 2;
+                        VmClass superclass = (VmClass)stack[--sp];
+                        stack[sp] = null;
+                        VmClosure method = superclass.methods.get(name);
+                        if(method != null) stack[sp - 1] = new VmBoundMethod(stack[sp - 1], method);
+                        else stack[sp - 1] = staticMethod(superclass, name);
+                        break;
+                    }
+
+                    case OpCode.EQUAL:
+                    {
+                        Object b = stack[--sp];
+                        stack[sp] = null;
+                        stack[sp - 1] = isEqual(stack[sp - 1], b);
+                        break;
+                    }
+                    case OpCode.NOT_EQUAL:
+                    {
+                        Object b = stack[--sp];
+                        stack[sp] = null;
+                        stack[sp - 1] = !isEqual(stack[sp - 1], b);
+                        break;
+                    }
+                    case OpCode.GREATER:
+                    {
+                        Object b = stack[--sp];
+                        Object a = stack[sp - 1];
+                        if(!Numbers.isNumber(a) || !Numbers.isNumber(b)) throw error("Operands must be numbers.");
+                        stack[sp - 1] = Numbers.greater(a, b);
+                        break;
+                    }
+                    case OpCode.GREATER_EQUAL:
+                    {
+                        Object b = stack[--sp];
+                        Object a = stack[sp - 1];
+                        if(!Numbers.isNumber(a) || !Numbers.isNumber(b)) throw error("Operands must be numbers.");
+                        stack[sp - 1] = Numbers.greaterEqual(a, b);
+                        break;
+                    }
+                    case OpCode.LESS:
+                    {
+                        Object b = stack[--sp];
+                        Object a = stack[sp - 1];
+                        if(!Numbers.isNumber(a) || !Numbers.isNumber(b)) throw error("Operands must be numbers.");
+                        stack[sp - 1] = Numbers.less(a, b);
+                        break;
+                    }
+                    case OpCode.LESS_EQUAL:
+                    {
+                        Object b = stack[--sp];
+                        Object a = stack[sp - 1];
+                        if(!Numbers.isNumber(a) || !Numbers.isNumber(b)) throw error("Operands must be numbers.");
+                        stack[sp - 1] = Numbers.lessEqual(a, b);
+                        break;
+                    }
+
+                    case OpCode.ADD:
+                    {
+                        Object b = stack[--sp];
+                        Object a = stack[sp - 1];
+                        stack[sp] = null;
+                        if(a instanceof Long && b instanceof Long) stack[sp - 1] = Numbers.add((long)a, (long)b);
+                        else if(Numbers.isNumber(a) && Numbers.isNumber(b)) stack[sp - 1] = Numbers.toDouble(a) + Numbers.toDouble(b);
+                        else if(a instanceof String && b instanceof String) stack[sp - 1] = (String)a + (String)b;
+                        else if(a instanceof String && Numbers.isNumber(b)) stack[sp - 1] = (String)a + Numbers.concat(b);
+                        else if(Numbers.isNumber(a) && b instanceof String) stack[sp - 1] = Numbers.concat(a) + (String)b;
+                        else throw error("Operands must be either numbers or strings");
+                        break;
+                    }
+                    case OpCode.SUBTRACT:
+                    {
+                        Object b = stack[--sp];
+                        Object a = stack[sp - 1];
+                        if(!Numbers.isNumber(b)) throw error("Operand must be a number.");
+                        if(!Numbers.isNumber(a)) throw error("Operands must be numbers.");
+                        if(a instanceof Long && b instanceof Long) stack[sp - 1] = Numbers.subtract((long)a, (long)b);
+                        else stack[sp - 1] = Numbers.toDouble(a) - Numbers.toDouble(b);
+                        break;
+                    }
+                    case OpCode.MULTIPLY:
+                    {
+                        Object b = stack[--sp];
+                        Object a = stack[sp - 1];
+                        if(!Numbers.isNumber(a) || !Numbers.isNumber(b)) throw error("Operands must be numbers.");
+                        stack[sp - 1] = Numbers.multiply(a, b);
+                        break;
+                    }
+                    case OpCode.DIVIDE:
+                    {
+                        Object b = stack[--sp];
+                        Object a = stack[sp - 1];
+                        if(!Numbers.isNumber(a) || !Numbers.isNumber(b)) throw error("Operands must be numbers.");
+                        if(Numbers.toDouble(b) == 0) throw error("Division by Zero is not permitted");
+                        stack[sp - 1] = Numbers.divide(a, b, null);
+                        break;
+                    }
+                    case OpCode.NOT: //same result as Interpreter.visitUnaryExpr for '!', which evaluates to the operand's truthiness
+                        stack[sp - 1] = isTruthy(stack[sp - 1]);
+                        break;
+                    case OpCode.NEGATE:
+                        if(!Numbers.isNumber(stack[sp - 1])) throw error("Operand must be a number.");
+                        stack[sp - 1] = Numbers.negate(stack[sp - 1]);
+                        break;
+
+                    case OpCode.PRINT:
+                        System.out.println(stringify(stack[--sp]));
+                        stack[sp] = null;
+                        break;
+
+                    case OpCode.JUMP:
+                        ip += (((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)) + 2;
+                        break;
+                    case OpCode.JUMP_IF_FALSE:
+                        if(isTruthy(stack[sp - 1])) ip += 2;
+                        else ip += (((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)) + 2;
+                        break;
+                    case OpCode.LOOP:
+                        ip -= (((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)) - 2;
+                        break;
+                    case OpCode.JUMP_WIDE:
+                        ip += readInt(code, ip) + 4;
+                        break;
+                    case OpCode.LOOP_WIDE:
+                        ip -= readInt(code, ip) - 4;
+                        break;
+
+                    case OpCode.CALL:
+                    {
+                        int argCount = code[ip++] & 0xff;
+                        frame.ip = ip;
+                        if(callValue(stack[sp - argCount - 1], argCount))
+                        {
+                            frame = frames[frameCount - 1];
+                            code = frame.closure.function.chunk.code;
+                            constants = frame.closure.function.chunk.constants;
+                            ip = 0;
+                            base = frame.base;
+                        }
+                        break;
+                    }
+                    case OpCode.INVOKE:
+                    {
+                        String name = (String)constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                        int argCount = code[ip + 2] & 0xff;
+                        ip += 3;
+                        frame.ip = ip;
+                        if(invoke(name, argCount, frame.closure.function.chunk.lines[ip - 4]))
+                        {
+                            frame = frames[frameCount - 1];
+                            code = frame.closure.function.chunk.code;
+                            constants = frame.closure.function.chunk.constants;
+                            ip = 0;
+                            base = frame.base;
+                        }
+                        break;
+                    }
+                    case OpCode.SUPER_INVOKE:
+                    {
+                        String name = (String)constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                        int argCount = code[ip + 2] & 0xff;
+                        ip += 3;
+                        frame.ip = ip;
+                        VmClass superclass = (VmClass)stack[--sp];
+                        stack[sp] = null;
+                        VmClosure method = superclass.methods.get(name);
+                        boolean pushed;
+                        if(method != null) pushed = call(method, argCount, false);
+                        else pushed = callValue(staticMethod(superclass, name, frame.closure.function.chunk.lines[ip - 4]), argCount);
+                        if(pushed)
+                        {
+                            frame = frames[frameCount - 1];
+                            code = frame.closure.function.chunk.code;
+                            constants = frame.closure.function.chunk.constants;
+                            ip = 0;
+                            base = frame.base;
+                        }
+                        break;
+                    }
+
+                    case OpCode.CLOSURE:
+                    {
+                        VmFunction function = (VmFunction)constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                        ip += 2;
+                        VmClosure closure = new VmClosure(function);
+                        for(int i = 0; i < closure.upvalues.length; i++)
+                        {
+                            boolean isLocal = code[ip] == 1;
+                            int index = ((code[ip + 1] & 0xff) << 8) | (code[ip + 2] & 0xff);
+                            ip += 3;
+                            closure.upvalues[i] = isLocal ? captureUpvalue(base + index) : frame.closure.upvalues[index];
+                        }
+                        stack[sp++] = closure;
+                        break;
+                    }
+                    case OpCode.CLOSE_UPVALUE:
+                        closeUpvalues(sp - 1);
+                        stack[--sp] = null;
+                        break;
+                    case OpCode.RETURN:
+                    {
+                        Object result = stack[--sp];
+                        closeUpvalues(base);
+                        if(frame.constructor) result = stack[base];
+                        frameCount--;
+                        Arrays.fill(stack, base, sp, null);
+                        sp = base;
+                        if(frameCount == 0) return; //the top level script has finished
+
+                        stack[sp++] = result;
+                        frame = frames[frameCount - 1];
+                        code = frame.closure.function.chunk.code;
+                        constants = frame.closure.function.chunk.constants;
+                        ip = frame.ip;
+                        base = frame.base;
+                        break;
+                    }
+
+                    case OpCode.CLASS:
+                        stack[sp++] = new VmClass((String)constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)]);
+                        ip += 2;
+                        break;
+                    case OpCode.INHERIT:
+                    {
+                        Object superclass = stack[sp - 2];
+                        if(!(superclass instanceof VmClass)) throw error("A class can only inherit from another class.(Superclass must be a class)");
+                        VmClass subclass = (VmClass)stack[sp - 1];
+                        subclass.superclass = (VmClass)superclass;
+                        subclass.methods.putAll(((VmClass)superclass).methods);
+                        subclass.initializer = ((VmClass)superclass).initializer;
+                        break;
+                    }
+                    case OpCode.METHOD:
+                    {
+                        String name = (String)constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                        ip += 2;
+                        VmClosure method = (VmClosure)stack[--sp];
+                        stack[sp] = null;
+                        VmClass klass = (VmClass)stack[sp - 1];
+                        klass.methods.put(name, method);
+                        if(name.equals("init")) klass.initializer = method;
+                        break;
+                    }
+                    case OpCode.STATIC_METHOD:
+                    {
+                        String name = (String)constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                        ip += 2;
+                        VmClosure method = (VmClosure)stack[--sp];
+                        stack[sp] = null;
+                        ((VmClass)stack[sp - 1]).staticMethods.put(name, method);
+                        break;
+                    }
+
+                    case OpCode.ARRAY:
+                    {
+                        int count = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                        ip += 2;
+                        List<Object> elements = new ArrayList<>(count);
+                        for(int i = sp - count; i < sp; i++)
+                        {
+                            elements.add(stack[i]);
+                            stack[i] = null;
+                        }
+                        sp -= count;
+                        stack[sp++] = new LoxArray(elements);
+                        break;
+                    }
+
+                    default:
+                        throw new IllegalStateException("Unknown opcode " + code[ip - 1]);
+                }
+            }
+        }
+        catch(RuntimeError err)
+        {
+            if(err.token != null) throw err;
+            //errors raised by the VM itself carry no token, report them at the line of the instruction that failed.
+            throw new RuntimeError(new Token(TokenType.EOF, "", null, frame.closure.function.chunk.lines[ip - 1]), err.getMessage());
+        }
+    }
+
+    private static int readInt(byte[] code, int ip) //u32 operand of the wide jumps
+    {
+        return ((code[ip] & 0xff) << 24) | ((code[ip + 1] & 0xff) << 16) | ((code[ip + 2] & 0xff) << 8) | (code[ip + 3] & 0xff);
+    }
+
+    private static RuntimeError error(String message) //the line is filled in by run()
+    {
+        return new RuntimeError(null, message);
+    }
+
+    private static RuntimeError error(int line, String message)
+    {
+        return new RuntimeError(new Token(TokenType.EOF, "", null, line), message);
+    }
+
+    //---------------------------------------------------------------- calls
+
+    //calls 'callee' with the argCount arguments on top of the stack. Returns true if a new frame was pushed,
+    //false if the call already completed and its result replaced the callee and arguments.
+    private boolean callValue(Object callee, int argCount)
+    {
+        if(callee instanceof VmClosure)
+        {
+            return call((VmClosure)callee, argCount, false);
+        }
+        if(callee instanceof VmBoundMethod)
+        {
+            VmBoundMethod bound = (VmBoundMethod)callee;
+            stack[sp - argCount - 1] = bound.receiver;
+            return call(bound.method, argCount, false);
+        }
+        if(callee instanceof VmClass)
+        {
+            VmClass klass = (VmClass)callee;
+            if(klass.initializer == null && argCount != 0) throw arityError(0, argCount);
+            stack[sp - argCount - 1] = new VmInstance(klass);
+            if(klass.initializer != null) return call(klass.initializer, argCount, true);
+            return false;
+        }
+        if(callee instanceof LoxCallable)
+        {
+            LoxCallable function = (LoxCallable)callee;
+            if(argCount != function.arity()) throw arityError(function.arity(), argCount);
+            Object result; //natives never call back into Lox code, so they get no Interpreter
+            int base = sp - argCount;
+            switch(argCount)
+            {
+                case 0: result = function.call0(null); break;
+                case 1: result = function.call1(null, stack[base]); break;
+                case 2: result = function.call2(null, stack[base], stack[base + 1]); break;
+                case 3: result = function.call3(null, stack[base], stack[base + 1], stack[base + 2]); break;
+                default: result = function.call(null, new ArrayList<>(Arrays.asList(stack).subList(base, sp)));
+            }
+            Arrays.fill(stack, sp - argCount, sp, null);
+            sp -= argCount;
+            stack[sp - 1] = result;
+            return false;
+        }
+        throw error("Can only call functions and classes.");
+    }
+
+    private boolean call(VmClosure closure, int argCount, boolean constructor)
+    {
+        VmFunction function = closure.function;
+        if(argCount != function.arity) throw arityError(function.arity, argCount);
+        if(frameCount == FRAMES_MAX) throw error("Stack overflow.");
+
+        int base = sp - argCount - 1;
+        if(base + function.maxStack > stack.length)
+        {
+            stack = Arrays.copyOf(stack, Math.max(stack.length * 2, base + function.maxStack));
+        }
+        if(frameCount == frames.length) frames = Arrays.copyOf(frames, frameCount * 2);
+        CallFrame frame = frames[frameCount];
+        if(frame == null) frame = frames[frameCount] = new CallFrame();
+        frame.closure = closure;
+        frame.ip = 0;
+        frame.base = base;
+        frame.constructor = constructor;
+        frameCount++;
+        return true;
+    }
+
+    private static RuntimeError arityError(int arity, int argCount)
+    {
+        return error("Expected " + arity + " arguments but got" + argCount + " .");
+    }
+
+    //same lookup order as LoxInstance.get : fields, then methods, then static methods.
+    private boolean invoke(String name, int argCount, int line)
+    {
+        Object receiver = stack[sp - argCount - 1];
+        if(receiver instanceof VmInstance)
+        {
+            VmInstance instance = (VmInstance)receiver;
+            Object field = instance.fields.get(name);
+            if(field != null || instance.fields.containsKey(name))
+            {
+                stack[sp - argCount - 1] = field;
+                return callValue(field, argCount);
+            }
+            if(name.equals("init")) throw error(line, "Initializer cannot be invoked explicitly after instance has been constructed.");
+            VmClosure method = instance.klass.methods.get(name);
+            if(method != null) return call(method, argCount, false);
+            return callValue(staticMethod(instance.klass, name, line), argCount);
+        }
+        Object callee = property(receiver, name, line);
+        stack[sp - argCount - 1] = callee;
+        return callValue(callee, argCount);
+    }
+
+    private Object getProperty(Object object, String name)
+    {
+        if(object instanceof VmInstance)
+        {
+            VmInstance instance = (VmInstance)object;
+            Object field = instance.fields.get(name);
+            if(field != null || instance.fields.containsKey(name)) return field;
+            if(name.equals("init")) throw error("Initializer cannot be invoked explicitly after instance has been constructed.");
+            VmClosure method = instance.klass.methods.get(name);
+            if(method != null) return new VmBoundMethod(instance, method);
+            return staticMethod(instance.klass, name);
+        }
+        return property(object, name, -1);
+    }
+
+    private Object property(Object object, String name, int line) //properties of classes and arrays, line -1 leaves it to run()
+    {
+        if(object instanceof VmClass) return staticMethod((VmClass)object, name, line);
+        if(object instanceof LoxArray)
+        {
+            LoxCallable method = ((LoxArray)object).findMethod(name);
+            if(method != null) return method;
+            throw lineError(line, "'" + name + "' " + "array method does not exist.");
+        }
+        throw lineError(line, "Only instances have properties.");
+    }
+
+    private VmClosure staticMethod(VmClass klass, String name)
+    {
+        return staticMethod(klass, name, -1);
+    }
+
+    private VmClosure staticMethod(VmClass klass, String name, int line)
+    {
+        VmClosure method = klass.staticMethods.get(name);
+        if(method != null) return method;
+        throw lineError(line, "Undefined propery'" + name + "' .");
+    }
+
+    private static RuntimeError lineError(int line, String message)
+    {
+        if(line == -1) return error(message);
+        return error(line, message);
+    }
+
+    //---------------------------------------------------------------- upvalues
+
+    private VmUpvalue captureUpvalue(int slot)
+    {
+        VmUpvalue prev = null;
+        VmUpvalue upvalue = openUpvalues;
+        while(upvalue != null && upvalue.slot > slot)
+        {
+            prev = upvalue;
+            upvalue = upvalue.next;
+        }
+        if(upvalue != null && upvalue.slot == slot) return upvalue;
+
+        VmUpvalue created = new VmUpvalue(slot, upvalue);
+        if(prev == null) openUpvalues = created;
+        else prev.next = created;
+        return created;
+    }
+
+    private void closeUpvalues(int last) //closes every open upvalue at or above the given stack slot
+    {
+        while(openUpvalues != null && openUpvalues.slot >= last)
+        {
+            VmUpvalue upvalue = openUpvalues;
+            upvalue.closed = stack[upvalue.slot];
+            upvalue.slot = -1;
+            openUpvalues = upvalue.next;
+        }
+    }
+
+    //---------------------------------------------------------------- values
+
+    //the same rules as the Interpreter, repeated here so programs jloxc compiled never load the tree-walker
+    private static String stringify(Object val)
+    {
+        if(val == null) return "nil";
+        if(Numbers.isNumber(val)) return Numbers.stringify(val);
+        return val.toString();
+    }
+
+    private static boolean isTruthy(Object obj)
+    {
+        if(obj == null) return false;
+        if(obj instanceof Boolean) return (boolean)obj;
+        return true;
+    }
+
+    private static boolean isEqual(Object left, Object right)
+    {
+        if(left == null && right == null) return true;
+        if(left == null || right == null) return false;
+        if(Numbers.isNumber(left) && Numbers.isNumber(right)) return Numbers.equal(left, right);
+
+        return left.equals(right);
+    }
+}
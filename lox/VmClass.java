@@ -0,0 +1,29 @@
+package lox;
+
+import java.util.HashMap;
+import java.util.Map;
+
+class VmClass {
+    final String name;
+    final Map<String, VmClosure> methods = new HashMap<>(); //inherited methods are copied in when the class is created, so no superclass walk is needed
+    final Map<String, VmClosure> staticMethods = new HashMap<>(); //only the class's own static methods, like LoxClass
+    VmClass superclass;
+    VmClosure initializer;
+
+    VmClass(String name)
+    {
+        this.name = name;
+    }
+
+    int arity()
+    {
+        if(initializer != null) return initializer.function.arity;
+        return 0;
+    }
+
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+}
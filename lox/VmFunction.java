@@ -0,0 +1,22 @@
+package lox;
+
+//a function as produced by the BytecodeCompiler. It is only a prototype, at runtime it is always wrapped in a VmClosure.
+class VmFunction {
+    final String name; //null for anonymous functions and the top level script
+    final Chunk chunk = new Chunk();
+    int arity = 0;
+    int upvalueCount = 0;
+    int maxStack = 0; //stack slots the function needs on top of its base, including its locals
+
+    VmFunction(String name)
+    {
+        this.name = name;
+    }
+
+    @Override
+    public String toString()
+    {
+        if(name == null) return "Anonymous function";
+        return "<fn " + name + ">";
+    }
+}
@@ -0,0 +1,15 @@
+package lox;
+
+//a variable captured by a closure. While the variable is still on the VM stack the upvalue points at its stack slot,
+//once the variable goes out of scope the value is moved into the upvalue itself ("closed").
+class VmUpvalue {
+    int slot; //-1 once closed
+    Object closed;
+    VmUpvalue next; //open upvalues form a list sorted by slot, highest first
+
+    VmUpvalue(int slot, VmUpvalue next)
+    {
+        this.slot = slot;
+        this.next = next;
+    }
+}
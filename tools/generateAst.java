@@ -14,34 +14,40 @@ public class generateAst {
           System.exit(64);
         }
         String outputDir = args[0];
+        //anything after a '|' is filled in by the Resolver (or at runtime, like the JIT state and inline caches), so it is emitted as a mutable field that is not part of the constructor.
+        //slot is the variable's index in the current function's frame, a Cell holds it there when cell is set (something captured it). upvalue indexes the
+        //running closure's captured Cells instead. Both -1 means the variable is a global, global is then its Cell in the global Environment.
+        //the number flags are set by TypeInference on expressions and locals it proved only ever hold numbers.
         defineAst(outputDir, "Expr", Arrays.asList(
-        "Assign  : Token name, Expr value",
-        "Binary   : Expr left, Token operator, Expr right",
+        "Assign  : Token name, Expr value | int slot = -1, boolean cell = false, int upvalue = -1, Cell global = null, boolean number = false",
+        "Binary   : Expr left, Token operator, Expr right | boolean numberOperands = false",
         "Grouping : Expr expression",
         "Literal  : Object value",
         "Logical  : Expr left, Token operator, Expr right",
-        "Unary    : Token operator, Expr right",
+        "Unary    : Token operator, Expr right | boolean number = false",
         "Ternary  : Expr Condition, Expr TrueBranch, Expr FalseBranch",
-        "Variable : Token name",
-        "This     : Token keyword",
-        "Super    : Token keyword, Token method",
-        "Call     : Expr calee, Token paren, List<Expr> arguments", //paren will be used to store token of right parenthesis, would be uselful for error reporting
-        "Get      : Expr object, Token name",
-        "Set      : Expr object, Token name, Expr value",
-        "AnonymousFunction : List<Token> parameters, List<Stmt> body" ,
-        "Array    : List<Expr> elements" 
+        "Variable : Token name | int slot = -1, boolean cell = false, int upvalue = -1, Cell global = null, boolean number = false",
+        "This     : Token keyword | int slot = -1, boolean cell = false, int upvalue = -1",
+        "Super    : Token keyword, Token method | int upvalue = -1, Expr.This self = null", //super is always captured from outside the method, self is the 'this' it binds to,
+        "Call     : Expr calee, Token paren, List<Expr> arguments | Stmt target = null, boolean guarded = false", //paren will be used to store token of right parenthesis, would be uselful for error reporting. target is the Stmt.Function or Stmt.Class the Resolver bound the call to, guarded when the callee still has to be checked to be it
+        "Get      : Expr object, Token name | InlineCache cache = new InlineCache()",
+        "Set      : Expr object, Token name, Expr value | InlineCache cache = new InlineCache()",
+        "AnonymousFunction : List<Token> parameters, List<Stmt> body | int slotCount = 0, int[] cellParams = null, int[] captures = null" ,
+        "Array    : List<Expr> elements",
+        "Inline   : Expr.Call call, Cell global, Stmt.Function function, int slot, Expr body" //a call the Optimizer inlined : the arguments go into the caller's frame from slot on and body runs there, unless global no longer holds function, then call runs
         ));
 
         defineAst(outputDir, "Stmt", Arrays.asList(
-            "Block : List<Stmt> Statements",
+            "Block : List<Stmt> Statements | int slotCount = 0", //only top level blocks get a frame of their own, nested ones use the enclosing frame,
         "Expression : Expr expression",
         "If : Expr condition, Stmt trueBranch, Stmt falseBranch",
         "Print      : Expr expression",
-        "Var        : Token name, Expr intializer",
-        "Class      : Token name , Expr.Variable superclass, List<Stmt.Function> methods, List<Stmt.Function> staticmethods",
-        "While      : Expr condition, Stmt body",
+        "Var        : Token name, Expr intializer | int slot = -1, boolean cell = false, boolean number = false",
+        "Class      : Token name , Expr.Variable superclass, List<Stmt.Function> methods, List<Stmt.Function> staticmethods | int slot = -1, boolean cell = false, int[] captures = null", //captures are for the frame holding 'super',
+        "While      : Token keyword, Expr condition, Stmt body | int backEdges = 0, JitLoop jitted = null", //backEdges counts iterations until the JIT compiles the loop into jitted, like calls for Function
+        "For        : Token keyword, Stmt initializer, Expr condition, Expr increment, Stmt body | int slotCount = 0, int backEdges = 0, JitLoop jitted = null", //initializer and increment may be null, slotCount is the frame of a top level loop like for Block
         "Break      : Token breakToken",
-        "Function   : Token name, List<Token> parameters, List<Stmt> body",
+        "Function   : Token name, List<Token> parameters, List<Stmt> body | int slot = -1, boolean cell = false, int slotCount = 0, int paramStart = 0, int[] cellParams = null, int[] captures = null, int calls = 0, JitCode jitted = null", //calls counts invocations until the JIT compiles the function into jitted, paramStart is 1 in methods whose slot 0 holds 'this', cellParams are the parameter slots boxed on entry, captures say where each upvalue comes from (see Resolver)
         "Return     : Token keyword, Expr value" //keyword stores the 'break' token, it will be useful for error reporting.
         ));
       }
@@ -87,6 +93,12 @@ public class generateAst {
             writer.println("  }");
     }
     private static void defineType( PrintWriter writer, String baseName, String className, String fieldList) {
+        String resolvedList = null;
+        if(fieldList.contains("|"))
+        {
+            resolvedList = fieldList.split("\\|")[1].trim();
+            fieldList = fieldList.split("\\|")[0].trim();
+        }
         writer.println("  static class " + className + " extends " +
             baseName + " {");
 
@@ -113,8 +125,15 @@ public class generateAst {
 
         // Fields.
         writer.println();
-        for (String field : fields) {
-        writer.println("    final " + field + ";");
+        for (String field : fields) { //child expressions and statements stay assignable, the Optimizer replaces them with what they fold to
+        String type = field.split(" ")[0];
+        writer.println("    " + (type.equals("Expr") || type.equals("Stmt") ? "" : "final ") + field + ";");
+        }
+        if(resolvedList != null)
+        {
+            for (String field : resolvedList.split(", ")) {
+            writer.println("    " + field + ";");
+            }
         }
 
         writer.println("  }");